@@ -0,0 +1,252 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plans how the machine brews a set of cups on its internal resources.
+ *
+ * The machine has one grinder, two group heads fed by the boiler (extraction and hot water), one milk
+ * frother and one cold dispenser. Each drink becomes a short list of steps derived from its
+ * ingredients; steps of different cups are pipelined across resources (cup 2 is ground while cup 1
+ * extracts) and the milk of a cup is frothed in parallel with its coffee. Several cup orders are tried
+ * and the plan with the smallest makespan is kept.
+ *
+ * Durations are in milliseconds of real machine time.
+ */
+public class BrewScheduler {
+
+    /** Front-ends run the machine 20 times faster than real time (~1.5 s instead of ~30 s for an espresso). */
+    public static final double SIMULATOR_TIME_SCALE = 0.05;
+
+    public enum Resource {
+        GRINDER("Мелачка", 1),
+        GROUP_HEAD("Група/бойлер", 2),
+        MILK_FROTHER("Разпенвач за мляко", 1),
+        COLD_DISPENSER("Студен диспенсър", 1);
+
+        private final String label;
+        private final int units;
+
+        Resource(String label, int units) {
+            this.label = label;
+            this.units = units;
+        }
+
+        public String getLabel() { return label; }
+        public int getUnits() { return units; }
+    }
+
+    /**
+     * One step of a drink. A step with {@code afterPrevious == false} only needs the cup to be started,
+     * so it can run in parallel with the steps before it (e.g. frothing milk while coffee extracts).
+     */
+    public static class Step {
+        final Resource resource;
+        final long durationMillis;
+        final boolean afterPrevious;
+
+        public Step(Resource resource, long durationMillis, boolean afterPrevious) {
+            this.resource = resource;
+            this.durationMillis = durationMillis;
+            this.afterPrevious = afterPrevious;
+        }
+
+        public Resource getResource() { return resource; }
+        public long getDurationMillis() { return durationMillis; }
+    }
+
+    public static class ScheduledStep {
+        final int cup;
+        final String drinkName;
+        final Resource resource;
+        final int unit;
+        final long startMillis;
+        final long endMillis;
+
+        ScheduledStep(int cup, String drinkName, Resource resource, int unit, long startMillis, long endMillis) {
+            this.cup = cup;
+            this.drinkName = drinkName;
+            this.resource = resource;
+            this.unit = unit;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+        }
+
+        /** Index of the cup in the order passed to {@link #plan}. */
+        public int getCup() { return cup; }
+        public String getDrinkName() { return drinkName; }
+        public Resource getResource() { return resource; }
+        public int getUnit() { return unit; }
+        public long getStartMillis() { return startMillis; }
+        public long getEndMillis() { return endMillis; }
+    }
+
+    public static class Schedule {
+        final List<ScheduledStep> steps;
+        final long[] cupCompletionMillis;
+        final long makespanMillis;
+
+        Schedule(List<ScheduledStep> steps, long[] cupCompletionMillis, long makespanMillis) {
+            this.steps = steps;
+            this.cupCompletionMillis = cupCompletionMillis;
+            this.makespanMillis = makespanMillis;
+        }
+
+        /** Steps sorted by start time. */
+        public List<ScheduledStep> getSteps() { return Collections.unmodifiableList(steps); }
+        /** Completion time of each cup, indexed like the input list. */
+        public long getCupCompletionMillis(int cup) { return cupCompletionMillis[cup]; }
+        public long getMakespanMillis() { return makespanMillis; }
+
+        static Schedule empty() {
+            return new Schedule(new ArrayList<>(), new long[0], 0);
+        }
+    }
+
+    static final String COFFEE = "Кафе на зърна (гр)";
+    static final String WATER = "Вода (мл)";
+    static final String MILK = "Мляко (мл)";
+    static final String COCOA = "Какао (гр)";
+    static final String TEA = "Чай (пакетче)";
+
+    private final Map<String, List<Step>> recipeOverrides = new HashMap<>();
+
+    public BrewScheduler() {
+        // Cold drinks cannot be told apart from hot ones by their ingredients alone
+        setRecipe("Вода", Collections.singletonList(new Step(Resource.COLD_DISPENSER, 4000, true)));
+        setRecipe("Кока Кола", Collections.singletonList(new Step(Resource.COLD_DISPENSER, 5000, true)));
+        List<Step> frappe = new ArrayList<>();
+        frappe.add(new Step(Resource.GRINDER, 1000 + 15 * 300, true));
+        frappe.add(new Step(Resource.GROUP_HEAD, 25000, true));
+        frappe.add(new Step(Resource.COLD_DISPENSER, 10000, true));
+        setRecipe("Фрапе", frappe);
+    }
+
+    /**
+     * Use an explicit step list for a drink instead of deriving it from its ingredients.
+     */
+    public void setRecipe(String drinkName, List<Step> steps) {
+        recipeOverrides.put(drinkName, new ArrayList<>(steps));
+    }
+
+    /**
+     * Steps needed to brew one portion of the drink.
+     */
+    public List<Step> stepsFor(CoffeeMachineSimulator.Drink drink) {
+        List<Step> override = recipeOverrides.get(drink.getName());
+        if (override != null) return override;
+
+        Map<String, Integer> ing = drink.getIngredients();
+        int coffee = ing.getOrDefault(COFFEE, 0);
+        int water = ing.getOrDefault(WATER, 0);
+        int milk = ing.getOrDefault(MILK, 0);
+        int cocoa = ing.getOrDefault(COCOA, 0);
+        int tea = ing.getOrDefault(TEA, 0);
+
+        List<Step> steps = new ArrayList<>();
+        if (coffee > 0) {
+            steps.add(new Step(Resource.GRINDER, 1000 + coffee * 300L, true));
+            steps.add(new Step(Resource.GROUP_HEAD, 25000 + Math.max(0, water - 50) * 20L, true));
+        } else if (water > 0 || tea > 0) {
+            steps.add(new Step(Resource.GROUP_HEAD, 5000 + water * 30L, true));
+        }
+        if (milk > 0 || cocoa > 0) {
+            // Milk is frothed in parallel with the coffee and poured at the end
+            steps.add(new Step(Resource.MILK_FROTHER, 8000 + milk * 40L + (cocoa > 0 ? 5000 : 0), steps.isEmpty()));
+        }
+        if (steps.isEmpty()) {
+            steps.add(new Step(Resource.COLD_DISPENSER, 3000, true));
+        }
+        return steps;
+    }
+
+    /**
+     * Plan the cups and return the schedule with the smallest makespan among a few cup orderings
+     * (as given, longest cup first, and Johnson's rule on grinder vs. the rest).
+     */
+    public Schedule plan(List<CoffeeMachineSimulator.Drink> cups) {
+        if (cups.isEmpty()) return Schedule.empty();
+        List<List<Step>> recipes = new ArrayList<>(cups.size());
+        for (CoffeeMachineSimulator.Drink d : cups) recipes.add(stepsFor(d));
+
+        List<Integer> asGiven = new ArrayList<>();
+        for (int i = 0; i < cups.size(); i++) asGiven.add(i);
+
+        List<Integer> longestFirst = new ArrayList<>(asGiven);
+        longestFirst.sort(Comparator.comparingLong((Integer i) -> totalDuration(recipes.get(i))).reversed());
+
+        // Johnson's rule for a two-stage line: short first stages early, short second stages late
+        List<Integer> johnsonHead = new ArrayList<>();
+        List<Integer> johnsonTail = new ArrayList<>();
+        for (int i : asGiven) {
+            long grind = durationOn(recipes.get(i), Resource.GRINDER);
+            long rest = totalDuration(recipes.get(i)) - grind;
+            if (grind <= rest) johnsonHead.add(i); else johnsonTail.add(i);
+        }
+        johnsonHead.sort(Comparator.comparingLong(i -> durationOn(recipes.get(i), Resource.GRINDER)));
+        johnsonTail.sort(Comparator.comparingLong((Integer i) -> totalDuration(recipes.get(i)) - durationOn(recipes.get(i), Resource.GRINDER)).reversed());
+        List<Integer> johnson = new ArrayList<>(johnsonHead);
+        johnson.addAll(johnsonTail);
+
+        Schedule best = null;
+        for (List<Integer> ordering : List.of(asGiven, longestFirst, johnson)) {
+            Schedule s = simulate(cups, recipes, ordering);
+            if (best == null || s.makespanMillis < best.makespanMillis) best = s;
+        }
+        return best;
+    }
+
+    public long estimateMillis(List<CoffeeMachineSimulator.Drink> cups) {
+        return plan(cups).getMakespanMillis();
+    }
+
+    /**
+     * Greedy list scheduling: cups in the given priority order, each step on the unit of its resource
+     * that becomes free first, no earlier than the step is ready.
+     */
+    private Schedule simulate(List<CoffeeMachineSimulator.Drink> cups, List<List<Step>> recipes, List<Integer> ordering) {
+        Map<Resource, long[]> freeAt = new HashMap<>();
+        for (Resource r : Resource.values()) freeAt.put(r, new long[r.units]);
+
+        List<ScheduledStep> scheduled = new ArrayList<>();
+        long[] completion = new long[cups.size()];
+        long makespan = 0;
+        for (int cup : ordering) {
+            long previousEnd = 0;
+            long cupEnd = 0;
+            for (Step step : recipes.get(cup)) {
+                long ready = step.afterPrevious ? previousEnd : 0;
+                long[] units = freeAt.get(step.resource);
+                int unit = 0;
+                for (int u = 1; u < units.length; u++) {
+                    if (units[u] < units[unit]) unit = u;
+                }
+                long start = Math.max(ready, units[unit]);
+                long end = start + step.durationMillis;
+                units[unit] = end;
+                scheduled.add(new ScheduledStep(cup, cups.get(cup).getName(), step.resource, unit, start, end));
+                previousEnd = Math.max(previousEnd, end);
+                cupEnd = Math.max(cupEnd, end);
+            }
+            completion[cup] = cupEnd;
+            makespan = Math.max(makespan, cupEnd);
+        }
+        scheduled.sort(Comparator.comparingLong(ScheduledStep::getStartMillis));
+        return new Schedule(scheduled, completion, makespan);
+    }
+
+    private static long totalDuration(List<Step> steps) {
+        long total = 0;
+        for (Step s : steps) total += s.durationMillis;
+        return total;
+    }
+
+    private static long durationOn(List<Step> steps, Resource resource) {
+        long total = 0;
+        for (Step s : steps) if (s.resource == resource) total += s.durationMillis;
+        return total;
+    }
+}
@@ -1,20 +1,35 @@
 import java.io.File;
-import java.io.FileWriter;
-import java.io.PrintWriter;
 import java.io.IOException;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
 import java.util.HashMap;
 import java.util.InputMismatchException;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 public class CoffeeMachineSimulator {
 
     private static final String STATE_FILE = "machine_state.json";
+    private static final String JOURNAL_FILE = "machine_journal.jsonl";
+    // Take a full snapshot once the journal grows past this size, which bounds startup replay
+    private static final long SNAPSHOT_JOURNAL_BYTES = 256 * 1024;
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     private enum UserRole {
@@ -46,10 +61,10 @@ public class CoffeeMachineSimulator {
         }
 
         public String toJson() {
-            return String.format(
+            return String.format(Locale.ROOT,
                 "{\"name\":\"%s\",\"price\":%.2f,\"cost\":%.2f,\"profit\":%.2f,\"time\":\"%s\"}",
                 drinkName, price, cost, profit, timestamp
-            ).replace(',', '.');
+            );
         }
         
         @Override
@@ -112,27 +127,644 @@ public class CoffeeMachineSimulator {
         }
     }
 
+    // ---------------- Events ----------------
+
+    /**
+     * Subscriber for state changes of a {@link CoffeeMachine}. Called on the thread that made the change.
+     */
+    public interface MachineEventListener {
+        void onEvent(MachineEvent event);
+    }
+
+    /**
+     * A single typed state change. Every mutation of {@link CoffeeMachine} is recorded as one of these:
+     * it is applied to the in-memory projections (menu, inventory, totals, sales), appended to the
+     * journal and published to listeners. Replaying the journal on top of the last snapshot rebuilds the state.
+     */
+    public static abstract class MachineEvent {
+        private long seq;
+        private final String timestamp;
+
+        protected MachineEvent(String timestamp) {
+            this.timestamp = timestamp != null ? timestamp : LocalDateTime.now().format(DATE_FORMATTER);
+        }
+
+        public long getSeq() { return seq; }
+        public String getTimestamp() { return timestamp; }
+
+        public abstract String getType();
+
+        abstract void applyTo(CoffeeMachine machine);
+
+        abstract void appendFields(StringBuilder sb);
+
+        public String toJson() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\"seq\":").append(seq);
+            sb.append(",\"type\":\"").append(getType()).append("\"");
+            sb.append(",\"time\":\"").append(timestamp).append("\"");
+            appendFields(sb);
+            sb.append("}");
+            return sb.toString();
+        }
+
+        /**
+         * Parse one journal line. Returns null for unknown event types.
+         */
+        static MachineEvent fromJson(String json) {
+            String type = CoffeeMachine.extractString(json, "type");
+            String time = CoffeeMachine.extractString(json, "time");
+            MachineEvent event;
+            if (SaleEvent.TYPE.equals(type)) {
+                Map<String, Integer> ingredients = new HashMap<>();
+                String ingredientsString = CoffeeMachine.extractObjectContent(json, "ingredients");
+                if (ingredientsString != null) CoffeeMachine.parseMap(ingredientsString, ingredients, Integer.class);
+                event = new SaleEvent(CoffeeMachine.extractEscapedString(json, "drink"),
+                        CoffeeMachine.extractDouble(json, "price"), CoffeeMachine.extractDouble(json, "cost"),
+                        CoffeeMachine.extractDouble(json, "profit"), ingredients, time);
+            } else if (RefillEvent.TYPE.equals(type)) {
+                event = new RefillEvent(CoffeeMachine.extractEscapedString(json, "ingredient"),
+                        (int) CoffeeMachine.extractDouble(json, "amount"), time);
+            } else if (CashCollectedEvent.TYPE.equals(type)) {
+                event = new CashCollectedEvent(CoffeeMachine.extractDouble(json, "amount"), time);
+            } else if (RefundEvent.TYPE.equals(type)) {
+                event = new RefundEvent(CoffeeMachine.extractEscapedString(json, "txid"),
+                        CoffeeMachine.extractDouble(json, "amount"), CoffeeMachine.extractDouble(json, "profit"), time);
+            } else if (DrinkAddedEvent.TYPE.equals(type)) {
+                event = new DrinkAddedEvent(parseEventDrink(json), time);
+            } else if (DrinkEditedEvent.TYPE.equals(type)) {
+                event = new DrinkEditedEvent(CoffeeMachine.extractEscapedString(json, "original"), parseEventDrink(json), time);
+            } else if (DrinkDeletedEvent.TYPE.equals(type)) {
+                event = new DrinkDeletedEvent(CoffeeMachine.extractEscapedString(json, "drink"), time);
+            } else if (DrinkImageEvent.TYPE.equals(type)) {
+                event = new DrinkImageEvent(CoffeeMachine.extractEscapedString(json, "drink"),
+                        CoffeeMachine.extractEscapedString(json, "path"), time);
+            } else if (IngredientCostEvent.TYPE.equals(type)) {
+                event = new IngredientCostEvent(CoffeeMachine.extractEscapedString(json, "ingredient"),
+                        CoffeeMachine.extractDouble(json, "unitCost"), time);
+            } else {
+                return null;
+            }
+            event.seq = (long) CoffeeMachine.extractDouble(json, "seq");
+            return event;
+        }
+
+        private static Drink parseEventDrink(String json) {
+            String drinkJson = CoffeeMachine.extractObjectContent(json, "drink");
+            if (drinkJson == null) return null;
+            Map<String, Integer> ingredients = new HashMap<>();
+            String ingredientsString = CoffeeMachine.extractObjectContent(drinkJson, "ingredients");
+            if (ingredientsString != null) CoffeeMachine.parseMap(ingredientsString, ingredients, Integer.class);
+            return new Drink(CoffeeMachine.extractString(drinkJson, "name"), CoffeeMachine.extractDouble(drinkJson, "price"), ingredients);
+        }
+
+        static void appendString(StringBuilder sb, String key, String value) {
+            sb.append(",\"").append(key).append("\":");
+            if (value == null) sb.append("null");
+            else sb.append("\"").append(CoffeeMachine.escapeJsonString(value)).append("\"");
+        }
+
+        static void appendNumber(StringBuilder sb, String key, double value) {
+            sb.append(",\"").append(key).append("\":").append(String.format(Locale.ROOT, "%.4f", value));
+        }
+    }
+
+    /** One drink sold: consumes its ingredients and adds to cash, profit and the sales history. */
+    public static class SaleEvent extends MachineEvent {
+        static final String TYPE = "SALE";
+        private final String drinkName;
+        private final double price;
+        private final double cost;
+        private final double profit;
+        private final Map<String, Integer> ingredients;
+
+        public SaleEvent(String drinkName, double price, double cost, double profit, Map<String, Integer> ingredients, String timestamp) {
+            super(timestamp);
+            this.drinkName = drinkName;
+            this.price = price;
+            this.cost = cost;
+            this.profit = profit;
+            this.ingredients = ingredients;
+        }
+
+        public String getDrinkName() { return drinkName; }
+        public double getPrice() { return price; }
+        public double getCost() { return cost; }
+        public double getProfit() { return profit; }
+        public Map<String, Integer> getIngredients() { return Collections.unmodifiableMap(ingredients); }
+
+        @Override public String getType() { return TYPE; }
+
+        @Override void applyTo(CoffeeMachine m) {
+            for (Map.Entry<String, Integer> entry : ingredients.entrySet()) {
+                int consumedAmount = entry.getValue();
+                m.inventory.computeIfPresent(entry.getKey(), (key, current) -> current - consumedAmount);
+            }
+            m.cash += price;
+            m.totalProfit += profit;
+            m.salesHistory.add(new SaleLog(drinkName, price, cost, profit, getTimestamp()));
+            m.drinkSalesCounts.merge(drinkName, 1, Integer::sum);
+        }
+
+        @Override void appendFields(StringBuilder sb) {
+            appendString(sb, "drink", drinkName);
+            appendNumber(sb, "price", price);
+            appendNumber(sb, "cost", cost);
+            appendNumber(sb, "profit", profit);
+            sb.append(",\"ingredients\":{");
+            boolean first = true;
+            for (Map.Entry<String, Integer> entry : ingredients.entrySet()) {
+                if (!first) sb.append(",");
+                sb.append("\"").append(entry.getKey()).append("\":").append(entry.getValue());
+                first = false;
+            }
+            sb.append("}");
+        }
+    }
+
+    public static class RefillEvent extends MachineEvent {
+        static final String TYPE = "REFILL";
+        private final String ingredient;
+        private final int amount;
+
+        public RefillEvent(String ingredient, int amount, String timestamp) {
+            super(timestamp);
+            this.ingredient = ingredient;
+            this.amount = amount;
+        }
+
+        public String getIngredient() { return ingredient; }
+        public int getAmount() { return amount; }
+
+        @Override public String getType() { return TYPE; }
+
+        @Override void applyTo(CoffeeMachine m) {
+            m.inventory.compute(ingredient, (key, current) -> (current == null ? 0 : current) + amount);
+        }
+
+        @Override void appendFields(StringBuilder sb) {
+            appendString(sb, "ingredient", ingredient);
+            sb.append(",\"amount\":").append(amount);
+        }
+    }
+
+    public static class CashCollectedEvent extends MachineEvent {
+        static final String TYPE = "CASH_COLLECTED";
+        private final double amount;
+
+        public CashCollectedEvent(double amount, String timestamp) {
+            super(timestamp);
+            this.amount = amount;
+        }
+
+        public double getAmount() { return amount; }
+
+        @Override public String getType() { return TYPE; }
+
+        @Override void applyTo(CoffeeMachine m) {
+            m.cash -= amount;
+        }
+
+        @Override void appendFields(StringBuilder sb) {
+            appendNumber(sb, "amount", amount);
+        }
+    }
+
+    /** Money returned for an earlier paid order: reverses its cash and profit (the drinks stay sold). */
+    public static class RefundEvent extends MachineEvent {
+        static final String TYPE = "REFUND";
+        private final String transactionId;
+        private final double amount;
+        private final double profit;
+
+        public RefundEvent(String transactionId, double amount, double profit, String timestamp) {
+            super(timestamp);
+            this.transactionId = transactionId;
+            this.amount = amount;
+            this.profit = profit;
+        }
+
+        /** Id of the refunded transaction. */
+        public String getTransactionId() { return transactionId; }
+        public double getAmount() { return amount; }
+        public double getProfit() { return profit; }
+
+        @Override public String getType() { return TYPE; }
+
+        @Override void applyTo(CoffeeMachine m) {
+            m.cash -= amount;
+            m.totalProfit -= profit;
+            if (transactionId != null) m.refundedTransactions.put(transactionId, getTimestamp());
+        }
+
+        @Override void appendFields(StringBuilder sb) {
+            appendString(sb, "txid", transactionId);
+            appendNumber(sb, "amount", amount);
+            appendNumber(sb, "profit", profit);
+        }
+    }
+
+    public static class DrinkAddedEvent extends MachineEvent {
+        static final String TYPE = "DRINK_ADDED";
+        private final Drink drink;
+
+        public DrinkAddedEvent(Drink drink, String timestamp) {
+            super(timestamp);
+            this.drink = drink;
+        }
+
+        public Drink getDrink() { return drink; }
+
+        @Override public String getType() { return TYPE; }
+
+        @Override void applyTo(CoffeeMachine m) {
+            for (String ingredient : drink.getIngredients().keySet()) {
+                m.inventory.putIfAbsent(ingredient, 0);
+            }
+            m.menu.put(drink.getName(), drink);
+        }
+
+        @Override void appendFields(StringBuilder sb) {
+            sb.append(",\"drink\":").append(drink.toJson());
+        }
+    }
+
+    /** Replaces a drink definition; keeps its image when the drink is renamed. */
+    public static class DrinkEditedEvent extends MachineEvent {
+        static final String TYPE = "DRINK_EDITED";
+        private final String originalName;
+        private final Drink drink;
+
+        public DrinkEditedEvent(String originalName, Drink drink, String timestamp) {
+            super(timestamp);
+            this.originalName = originalName;
+            this.drink = drink;
+        }
+
+        public String getOriginalName() { return originalName; }
+        public Drink getDrink() { return drink; }
+
+        @Override public String getType() { return TYPE; }
+
+        @Override void applyTo(CoffeeMachine m) {
+            m.menu.remove(originalName);
+            String image = m.drinkImages.remove(originalName);
+            if (image != null) m.drinkImages.put(drink.getName(), image);
+            for (String ingredient : drink.getIngredients().keySet()) {
+                m.inventory.putIfAbsent(ingredient, 0);
+            }
+            m.menu.put(drink.getName(), drink);
+        }
+
+        @Override void appendFields(StringBuilder sb) {
+            appendString(sb, "original", originalName);
+            sb.append(",\"drink\":").append(drink.toJson());
+        }
+    }
+
+    public static class DrinkDeletedEvent extends MachineEvent {
+        static final String TYPE = "DRINK_DELETED";
+        private final String drinkName;
+
+        public DrinkDeletedEvent(String drinkName, String timestamp) {
+            super(timestamp);
+            this.drinkName = drinkName;
+        }
+
+        public String getDrinkName() { return drinkName; }
+
+        @Override public String getType() { return TYPE; }
+
+        @Override void applyTo(CoffeeMachine m) {
+            m.menu.remove(drinkName);
+            m.drinkImages.remove(drinkName);
+        }
+
+        @Override void appendFields(StringBuilder sb) {
+            appendString(sb, "drink", drinkName);
+        }
+    }
+
+    /** Attaches an image to a drink; a null path removes it. */
+    public static class DrinkImageEvent extends MachineEvent {
+        static final String TYPE = "DRINK_IMAGE";
+        private final String drinkName;
+        private final String path;
+
+        public DrinkImageEvent(String drinkName, String path, String timestamp) {
+            super(timestamp);
+            this.drinkName = drinkName;
+            this.path = path;
+        }
+
+        public String getDrinkName() { return drinkName; }
+        public String getPath() { return path; }
+
+        @Override public String getType() { return TYPE; }
+
+        @Override void applyTo(CoffeeMachine m) {
+            if (path == null || path.isEmpty()) m.drinkImages.remove(drinkName);
+            else m.drinkImages.put(drinkName, path);
+        }
+
+        @Override void appendFields(StringBuilder sb) {
+            appendString(sb, "drink", drinkName);
+            appendString(sb, "path", path);
+        }
+    }
+
+    public static class IngredientCostEvent extends MachineEvent {
+        static final String TYPE = "INGREDIENT_COST";
+        private final String ingredient;
+        private final double unitCost;
+
+        public IngredientCostEvent(String ingredient, double unitCost, String timestamp) {
+            super(timestamp);
+            this.ingredient = ingredient;
+            this.unitCost = unitCost;
+        }
+
+        public String getIngredient() { return ingredient; }
+        public double getUnitCost() { return unitCost; }
+
+        @Override public String getType() { return TYPE; }
+
+        @Override void applyTo(CoffeeMachine m) {
+            m.ingredientCosts.put(ingredient, unitCost);
+            m.inventory.putIfAbsent(ingredient, 0);
+        }
+
+        @Override void appendFields(StringBuilder sb) {
+            appendString(sb, "ingredient", ingredient);
+            appendNumber(sb, "unitCost", unitCost);
+        }
+    }
+
     public static class CoffeeMachine {
+        // Latency of the persistence and order paths, published over JMX by Metrics
+        private static final Metrics.Histogram SAVE_STATE_TIME = Metrics.getDefault().histogram("machine.saveState");
+        private static final Metrics.Histogram LOAD_STATE_TIME = Metrics.getDefault().histogram("machine.loadState");
+        private static final Metrics.Histogram JOURNAL_APPEND_TIME = Metrics.getDefault().histogram("machine.journalAppend");
+        private static final Metrics.Histogram CHECK_INGREDIENTS_TIME = Metrics.getDefault().histogram("machine.checkTotalIngredients");
+        private static final Metrics.Histogram MAKE_DRINK_TIME = Metrics.getDefault().histogram("machine.makeSingleDrink");
+        private static final Metrics.Counter PERSISTENCE_ERRORS = Metrics.getDefault().counter("machine.persistenceErrors");
+
         private final Map<String, Drink> menu;
         private final Map<String, Integer> inventory;
         private final Map<String, Double> ingredientCosts;
         private final List<SaleLog> salesHistory;
         private final Map<String, String> drinkImages; // map drink name -> image path
+        private final Map<String, Integer> drinkSalesCounts; // rollup: drink name -> portions sold
+        private final Map<String, String> refundedTransactions; // refunded txid -> time of the refund
+        private final List<MachineEvent> eventLog; // events recorded since the last snapshot
+        private final List<MachineEventListener> listeners;
         private double cash;
         private double totalProfit;
+        private long eventSeq;
+        private FileChannel journal; // opened lazily, append-only
+        private long journalBytes;
+        private final File stateFile;
+        private final File journalFile;
+        private final Clock clock;
+        private final boolean persistent;
 
         public CoffeeMachine() {
+            this(new File("."));
+        }
+
+        /**
+         * Machine whose snapshot and journal live in {@code dataDir} (used by headless drivers to
+         * run against a scratch copy instead of the real machine_state.json).
+         */
+        public CoffeeMachine(File dataDir) {
+            this(dataDir, Clock.systemDefaultZone(), true);
+        }
+
+        /**
+         * @param clock      source of event timestamps (a virtual clock in simulations)
+         * @param persistent false to start from the state in {@code dataDir} but never write to it:
+         *                   no journal, no snapshots (used by simulations and replays)
+         */
+        public CoffeeMachine(File dataDir, Clock clock, boolean persistent) {
+            this.clock = clock;
+            this.persistent = persistent;
+            this.stateFile = new File(dataDir, STATE_FILE);
+            this.journalFile = new File(dataDir, JOURNAL_FILE);
             this.menu = new HashMap<>();
             this.inventory = new HashMap<>();
             this.ingredientCosts = new HashMap<>();
             this.salesHistory = new ArrayList<>();
             this.drinkImages = new HashMap<>();
+            this.drinkSalesCounts = new HashMap<>();
+            this.refundedTransactions = new HashMap<>();
+            this.eventLog = new ArrayList<>();
+            this.listeners = new CopyOnWriteArrayList<>();
             this.cash = 0.0;
             this.totalProfit = 0.0;
+            this.eventSeq = 0;
             
             if (!loadState()) {
                 initializeDefaultState();
             }
+            replayJournal();
+        }
+
+        // ---------------- Event log ----------------
+
+        public void addEventListener(MachineEventListener listener) {
+            listeners.add(listener);
+        }
+
+        public void removeEventListener(MachineEventListener listener) {
+            listeners.remove(listener);
+        }
+
+        /**
+         * Sequence number of the last applied event.
+         */
+        public synchronized long getLastEventSeq() {
+            return eventSeq;
+        }
+
+        public Clock getClock() {
+            return clock;
+        }
+
+        /** Current time of the machine's clock, formatted like event timestamps. */
+        private String now() {
+            return LocalDateTime.now(clock).format(DATE_FORMATTER);
+        }
+
+        /**
+         * Read-only view of the events recorded since the last snapshot.
+         */
+        public List<MachineEvent> getEventsSinceSnapshot() {
+            return Collections.unmodifiableList(eventLog);
+        }
+
+        /**
+         * Apply an event to the projections, append it to the journal and notify listeners.
+         * All state changes go through here.
+         */
+        private void record(MachineEvent event) {
+            recordAll(Collections.singletonList(event));
+        }
+
+        /**
+         * Group commit: apply several events, then write them to the journal with a single write
+         * and a single fsync before notifying listeners.
+         */
+        private void recordAll(List<MachineEvent> events) {
+            if (events.isEmpty()) return;
+            for (MachineEvent event : events) {
+                event.seq = ++eventSeq;
+                event.applyTo(this);
+                if (persistent) eventLog.add(event);
+            }
+            appendToJournal(events);
+            for (MachineEvent event : events) {
+                for (MachineEventListener listener : listeners) {
+                    try {
+                        listener.onEvent(event);
+                    } catch (RuntimeException e) {
+                        System.out.println("⚠️ Грешка в абонат за събития: " + e.getMessage());
+                    }
+                }
+            }
+            if (journalBytes >= SNAPSHOT_JOURNAL_BYTES) {
+                saveState();
+            }
+        }
+
+        /**
+         * Journal record format: one line per event, "crc32hex json\n". The records are fsynced
+         * before the call returns, so an acknowledged event survives a crash.
+         */
+        private void appendToJournal(List<MachineEvent> events) {
+            if (!persistent) return;
+            long started = System.nanoTime();
+            try {
+                if (journal == null) {
+                    journal = FileChannel.open(journalFile.toPath(),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                }
+                List<byte[]> lines = new ArrayList<>(events.size());
+                int size = 0;
+                for (MachineEvent event : events) {
+                    byte[] json = event.toJson().getBytes(StandardCharsets.UTF_8);
+                    CRC32 crc = new CRC32();
+                    crc.update(json);
+                    byte[] line = new byte[9 + json.length + 1];
+                    System.arraycopy(String.format("%08x ", crc.getValue()).getBytes(StandardCharsets.US_ASCII), 0, line, 0, 9);
+                    System.arraycopy(json, 0, line, 9, json.length);
+                    line[line.length - 1] = '\n';
+                    lines.add(line);
+                    size += line.length;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(size);
+                for (byte[] line : lines) buffer.put(line);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    journalBytes += journal.write(buffer);
+                }
+                journal.force(false);
+            } catch (IOException e) {
+                PERSISTENCE_ERRORS.increment();
+                System.out.println("❌ Грешка при запис в журнала: " + e.getMessage());
+            } finally {
+                JOURNAL_APPEND_TIME.recordSince(started);
+            }
+        }
+
+        /**
+         * Fold the journal tail on top of the loaded snapshot. Events already contained in the
+         * snapshot (seq <= snapshot seq) are skipped. Replay stops at the first record with a bad
+         * checksum or without a newline (a write torn by a crash) and the journal is truncated there,
+         * so later appends never follow garbage. A record that is intact but cannot be applied (a gap
+         * in the sequence, an unknown event type) is not torn: the whole journal is moved aside
+         * untouched, like a corrupt snapshot, and a fresh one is started.
+         */
+        private void replayJournal() {
+            Path path = journalFile.toPath();
+            if (!Files.exists(path)) return;
+            int replayed = 0;
+            try {
+                byte[] data = Files.readAllBytes(path);
+                int pos = 0;
+                int validEnd = 0;
+                boolean unusable = false;
+                while (pos < data.length) {
+                    int end = pos;
+                    while (end < data.length && data[end] != '\n') end++;
+                    if (end == data.length) break; // unterminated tail record
+                    String json = checkedJournalRecord(data, pos, end);
+                    if (json == null) break; // torn record
+                    MachineEvent event;
+                    try {
+                        event = MachineEvent.fromJson(json);
+                    } catch (RuntimeException e) {
+                        event = null;
+                    }
+                    if (event == null) {
+                        System.out.println("❌ Непознат запис в журнала след събитие " + eventSeq
+                                + ". Възстановяването е спряно.");
+                        unusable = true;
+                        break;
+                    }
+                    if (event.seq > eventSeq) {
+                        if (event.seq != eventSeq + 1) {
+                            System.out.println("❌ Журналът не продължава снимката (очаквано събитие " + (eventSeq + 1)
+                                    + ", намерено " + event.seq + "). Възстановяването е спряно.");
+                            unusable = true;
+                            break;
+                        }
+                        event.applyTo(this);
+                        eventSeq = event.seq;
+                        eventLog.add(event);
+                        replayed++;
+                    }
+                    pos = end + 1;
+                    validEnd = pos;
+                }
+                if (unusable) {
+                    // Appending after records that were not applied would reuse their sequence
+                    // numbers; the events replayed so far go into a fresh snapshot instead
+                    journalBytes = data.length;
+                    if (quarantineCorruptState(journalFile)) {
+                        journalBytes = 0;
+                        saveState();
+                    }
+                } else {
+                    if (validEnd < data.length && persistent) {
+                        System.out.println("⚠️ Повредена опашка на журнала (" + (data.length - validEnd) + " байта) е отрязана.");
+                        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                            channel.truncate(validEnd);
+                            channel.force(true);
+                        }
+                    }
+                    journalBytes = validEnd;
+                }
+            } catch (IOException | RuntimeException e) {
+                System.out.println("❌ Грешка при възстановяване от журнала: " + e.getMessage());
+            }
+            if (replayed > 0) {
+                System.out.println("✅ Възстановени " + replayed + " събития от журнала: " + journalFile.getName());
+            }
+        }
+
+        /** The JSON of a journal record, or null if the record is torn (bad checksum). */
+        private static String checkedJournalRecord(byte[] data, int start, int end) {
+            if (end - start < 10 || data[start + 8] != ' ') return null;
+            long expected;
+            try {
+                expected = Long.parseLong(new String(data, start, 8, StandardCharsets.US_ASCII), 16);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data, start + 9, end - start - 9);
+            if (crc.getValue() != expected) return null;
+            return new String(data, start + 9, end - start - 9, StandardCharsets.UTF_8);
         }
         
         private void initializeDefaultState() {
@@ -212,7 +844,7 @@ public class CoffeeMachineSimulator {
             menu.put("Двойно Еспресо", new Drink("Двойно Еспресо", 2.80, doubleEspressoIngredients));
         }
 
-        private String extractObjectContent(String json, String key) {
+        private static String extractObjectContent(String json, String key) {
             String searchKey = "\"" + key + "\":";
             int keyStart = json.indexOf(searchKey);
             if (keyStart == -1) return null;
@@ -234,7 +866,7 @@ public class CoffeeMachineSimulator {
             return null;
         }
 
-        private String extractArrayContent(String json, String key) {
+        private static String extractArrayContent(String json, String key) {
             String searchKey = "\"" + key + "\":";
             int keyStart = json.indexOf(searchKey);
             if (keyStart == -1) return null;
@@ -256,7 +888,7 @@ public class CoffeeMachineSimulator {
             return null;
         }
 
-        private String extractString(String json, String key) {
+        private static String extractString(String json, String key) {
             String searchKey = "\"" + key + "\":\"";
             int start = json.indexOf(searchKey);
             if (start == -1) return null;
@@ -266,7 +898,25 @@ public class CoffeeMachineSimulator {
             return json.substring(valueStart, valueEnd);
         }
 
-        private double extractDouble(String json, String key) {
+        /**
+         * Like extractString, but honours backslash escapes (paths, quotes). Returns null for a JSON null.
+         */
+        private static String extractEscapedString(String json, String key) {
+            String searchKey = "\"" + key + "\":\"";
+            int start = json.indexOf(searchKey);
+            if (start == -1) return null;
+            StringBuilder value = new StringBuilder();
+            int i = start + searchKey.length();
+            while (i < json.length()) {
+                char c = json.charAt(i++);
+                if (c == '\\' && i < json.length()) { value.append(json.charAt(i++)); continue; }
+                if (c == '"') return value.toString();
+                value.append(c);
+            }
+            return null;
+        }
+
+        private static double extractDouble(String json, String key) {
             String searchKey = "\"" + key + "\":";
             int start = json.indexOf(searchKey);
             if (start == -1) return 0.0;
@@ -291,7 +941,7 @@ public class CoffeeMachineSimulator {
             }
         }
         
-        private <T> void parseMap(String mapContent, Map<String, T> map, Class<T> valueType) throws NumberFormatException {
+        private static <T> void parseMap(String mapContent, Map<String, T> map, Class<T> valueType) throws NumberFormatException {
             mapContent = mapContent.trim();
             if (mapContent.isEmpty()) return;
 
@@ -320,7 +970,7 @@ public class CoffeeMachineSimulator {
          * Parse a JSON-like object content where values are strings:
          * Example content: "\"Еспресо\":\"C:\\\\images\\\\espresso.png\",\"Лате\":\"/home/user/latte.jpg\""
          */
-        private void parseStringMap(String content, Map<String, String> map) {
+        private static void parseStringMap(String content, Map<String, String> map) {
             if (content == null) return;
             int i = 0;
             int n = content.length();
@@ -355,16 +1005,27 @@ public class CoffeeMachineSimulator {
             }
         }
 
-        private String escapeJsonString(String s) {
+        private static String escapeJsonString(String s) {
             if (s == null) return "";
             return s.replace("\\", "\\\\").replace("\"", "\\\"");
         }
 
-        public void saveState() {
-            try (PrintWriter writer = new PrintWriter(new FileWriter(STATE_FILE))) {
+        /**
+         * Write a full snapshot. The snapshot goes to a temp file which is fsynced and atomically
+         * renamed over {@code machine_state.json}, so a crash leaves either the old or the new
+         * snapshot, never a torn one. The journal is truncated afterwards; if we crash before that,
+         * replay skips the events the snapshot already covers.
+         */
+        public synchronized void saveState() {
+            if (!persistent) return;
+            long started = System.nanoTime();
+            Path target = stateFile.toPath();
+            Path tmp = Paths.get(stateFile.getPath() + ".tmp");
+            try {
                 StringBuilder sb = new StringBuilder();
                 sb.append("{");
                 
+                sb.append("\"eventSeq\":").append(this.eventSeq).append(",");
                 sb.append("\"cash\":").append(String.format("%.2f", this.cash).replace(',', '.')).append(",");
                 sb.append("\"totalProfit\":").append(String.format("%.2f", this.totalProfit).replace(',', '.')).append(",");
                 
@@ -397,6 +1058,16 @@ public class CoffeeMachineSimulator {
                 }
                 sb.append("},");
 
+                sb.append("\"refundedTransactions\":{");
+                boolean firstRefund = true;
+                for (Map.Entry<String, String> entry : refundedTransactions.entrySet()) {
+                    if (!firstRefund) sb.append(",");
+                    sb.append("\"").append(escapeJsonString(entry.getKey())).append("\":");
+                    sb.append("\"").append(escapeJsonString(entry.getValue())).append("\"");
+                    firstRefund = false;
+                }
+                sb.append("},");
+
                 sb.append("\"menu\":[");
                 boolean firstMenu = true;
                 for (Drink drink : menu.values()) {
@@ -416,30 +1087,59 @@ public class CoffeeMachineSimulator {
                 sb.append("]");
                 
                 sb.append("}");
-                writer.print(sb.toString());
 
-                System.out.println("✅ Състоянието е успешно запазено във JSON файла: " + STATE_FILE);
+                try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+                    out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+                    out.getFD().sync();
+                }
+                try {
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                // Snapshot now covers everything in the journal
+                eventLog.clear();
+                if (journal != null) {
+                    journal.truncate(0);
+                    journal.force(true);
+                } else {
+                    Files.deleteIfExists(journalFile.toPath());
+                }
+                journalBytes = 0;
+
+                System.out.println("✅ Състоянието е успешно запазено във JSON файла: " + stateFile.getName());
             } catch (IOException e) {
+                PERSISTENCE_ERRORS.increment();
                 System.out.println("❌ Грешка при записване на състоянието: " + e.getMessage());
+            } finally {
+                SAVE_STATE_TIME.recordSince(started);
             }
         }
 
-        public boolean loadState() {
-            File file = new File(STATE_FILE);
+        public synchronized boolean loadState() {
+            File file = stateFile;
             if (!file.exists()) {
                 return false; 
             }
             
-            try (Scanner fileScanner = new Scanner(file).useDelimiter("\\A")) {
-                if (!fileScanner.hasNext()) return false;
-                String jsonContent = fileScanner.next().trim();
+            long started = System.nanoTime();
+            try {
+                String jsonContent = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+                if (!jsonContent.startsWith("{") || !jsonContent.endsWith("}")) {
+                    throw new IOException("непълен JSON");
+                }
 
                 this.menu.clear();
                 this.inventory.clear();
                 this.ingredientCosts.clear();
                 this.salesHistory.clear();
                 this.drinkImages.clear();
+                this.drinkSalesCounts.clear();
+                this.refundedTransactions.clear();
+                this.eventLog.clear();
 
+                this.eventSeq = (long) extractDouble(jsonContent, "eventSeq");
                 this.cash = extractDouble(jsonContent, "cash");
                 this.totalProfit = extractDouble(jsonContent, "totalProfit");
 
@@ -458,6 +1158,11 @@ public class CoffeeMachineSimulator {
                     parseStringMap(imagesString, (Map)drinkImages);
                 }
 
+                String refundsString = extractObjectContent(jsonContent, "refundedTransactions");
+                if (refundsString != null) {
+                    parseStringMap(refundsString, refundedTransactions);
+                }
+
                 String menuArrayString = extractArrayContent(jsonContent, "menu");
                 if (menuArrayString != null) {
                     String[] drinkObjects = menuArrayString.split("(?<=}),(?=\\{)"); 
@@ -494,19 +1199,46 @@ public class CoffeeMachineSimulator {
                         
                         if (name != null) {
                             salesHistory.add(new SaleLog(name, price, cost, profit, time));
+                            drinkSalesCounts.merge(name, 1, Integer::sum);
                         }
                     }
                 }
                 
-                System.out.println("✅ Състоянието е успешно заредено от JSON файла: " + STATE_FILE);
+                System.out.println("✅ Състоянието е успешно заредено от JSON файла: " + stateFile.getName());
                 return true;
-            } catch (IOException | NumberFormatException | NullPointerException e) {
+            } catch (IOException | NumberFormatException | NullPointerException | StringIndexOutOfBoundsException e) {
                 System.out.println("❌ Грешка при зареждане/парсване на JSON състоянието: " + e.getMessage());
-                initializeDefaultState(); 
+                quarantineCorruptState(file);
+                this.menu.clear();
+                this.inventory.clear();
+                this.ingredientCosts.clear();
+                this.salesHistory.clear();
+                this.drinkImages.clear();
+                this.drinkSalesCounts.clear();
+                this.refundedTransactions.clear();
+                this.eventSeq = 0;
                 return false;
+            } finally {
+                LOAD_STATE_TIME.recordSince(started);
             }
         }
 
+        /**
+         * Keep a corrupt snapshot or journal aside instead of letting the next save overwrite it, so
+         * cash, inventory and sales can still be recovered by hand.
+         *
+         * @return true if the file was moved
+         */
+        private boolean quarantineCorruptState(File file) {
+            if (!persistent) return false;
+            File aside = new File(file.getPath() + ".corrupt-" + System.currentTimeMillis());
+            if (file.renameTo(aside)) {
+                System.out.println("⚠️ Повреденият файл е запазен като: " + aside.getName());
+                return true;
+            }
+            return false;
+        }
+
         private double calculateDrinkCost(Drink drink) {
             double cost = 0.0;
             for (Map.Entry<String, Integer> entry : drink.getIngredients().entrySet()) {
@@ -533,103 +1265,216 @@ public class CoffeeMachineSimulator {
             return true;
         }
         
-        public boolean checkTotalIngredients(List<String> drinkNames) {
-            Map<String, Integer> tempInventory = new HashMap<>(inventory);
-            boolean allAvailable = true;
-            
+        /**
+         * Whether the stock covers all these drinks together (unknown names are ignored), like
+         * {@link #checkTotalIngredients} but without printing anything: for polled availability.
+         */
+        public synchronized boolean hasIngredientsFor(List<String> drinkNames) {
+            Map<String, Integer> needed = new HashMap<>();
             for (String drinkName : drinkNames) {
                 Drink drink = menu.get(drinkName);
-                if (drink == null) continue;
+                if (drink != null) drink.getIngredients().forEach((ingredient, amount) -> needed.merge(ingredient, amount, Integer::sum));
+            }
+            for (Map.Entry<String, Integer> entry : needed.entrySet()) {
+                if (inventory.getOrDefault(entry.getKey(), 0) < entry.getValue()) return false;
+            }
+            return true;
+        }
+
+        public synchronized boolean checkTotalIngredients(List<String> drinkNames) {
+            long started = System.nanoTime();
+            try {
+                Map<String, Integer> tempInventory = new HashMap<>(inventory);
+                boolean allAvailable = true;
+            
+                for (String drinkName : drinkNames) {
+                    Drink drink = menu.get(drinkName);
+                    if (drink == null) continue;
                 
-                for (Map.Entry<String, Integer> entry : drink.getIngredients().entrySet()) {
-                    String ingredientName = entry.getKey();
-                    int requiredAmount = entry.getValue();
+                    for (Map.Entry<String, Integer> entry : drink.getIngredients().entrySet()) {
+                        String ingredientName = entry.getKey();
+                        int requiredAmount = entry.getValue();
                     
-                    int currentAmount = tempInventory.getOrDefault(ingredientName, 0);
+                        int currentAmount = tempInventory.getOrDefault(ingredientName, 0);
                     
-                    if (currentAmount < requiredAmount) {
-                        System.out.println("❌ Грешка в запасите: Недостатъчно " + ingredientName + " за " + drinkName + ".");
-                        allAvailable = false;
-                    } else {
-                        tempInventory.put(ingredientName, currentAmount - requiredAmount);
+                        if (currentAmount < requiredAmount) {
+                            System.out.println("❌ Грешка в запасите: Недостатъчно " + ingredientName + " за " + drinkName + ".");
+                            allAvailable = false;
+                        } else {
+                            tempInventory.put(ingredientName, currentAmount - requiredAmount);
+                        }
                     }
                 }
-            }
             
-            if (!allAvailable) {
-                System.out.println("🚫 Поръчката е отказана поради липса на съставки.");
+                if (!allAvailable) {
+                    System.out.println("🚫 Поръчката е отказана поради липса на съставки.");
+                }
+                return allAvailable;
+            } finally {
+                CHECK_INGREDIENTS_TIME.recordSince(started);
             }
-            return allAvailable;
         }
 
-        public void makeSingleDrink(String drinkName) {
-            Drink drink = menu.get(drinkName);
+        /**
+         * Check and prepare a whole order atomically: either every drink is made or none is.
+         * Returns false (and changes nothing) when the ingredients do not cover the order.
+         */
+        public synchronized boolean makeOrder(List<String> drinkNames) {
+            for (String drinkName : drinkNames) {
+                if (!menu.containsKey(drinkName)) {
+                    System.out.println("❌ Грешка: Напитка '" + drinkName + "' не е в менюто.");
+                    return false;
+                }
+            }
+            if (!checkTotalIngredients(drinkNames)) {
+                return false;
+            }
+            for (String drinkName : drinkNames) {
+                makeSingleDrink(drinkName);
+            }
+            return true;
+        }
 
-            if (!hasEnoughIngredients(drink)) {
-                System.out.println("❌ Грешка: Грешка в запасите при изпълнение на " + drinkName + ".");
-                return;
+        /**
+         * Validate and prepare a batch of orders in one pass. Orders are taken in FIFO order against a
+         * running copy of the inventory; an order is accepted only if all of its drinks still fit.
+         * All resulting sales are group-committed to the journal with one fsync.
+         *
+         * @return accepted[i] is true when orders.get(i) was made
+         */
+        public synchronized boolean[] makeOrders(List<List<String>> orders) {
+            boolean[] accepted = new boolean[orders.size()];
+            Map<String, Integer> remaining = new HashMap<>(inventory);
+            List<MachineEvent> events = new ArrayList<>();
+            int cups = 0;
+            for (int i = 0; i < orders.size(); i++) {
+                List<String> order = orders.get(i);
+                Map<String, Integer> needed = new HashMap<>();
+                boolean known = !order.isEmpty();
+                for (String drinkName : order) {
+                    Drink drink = menu.get(drinkName);
+                    if (drink == null) { known = false; break; }
+                    drink.getIngredients().forEach((ingredient, amount) -> needed.merge(ingredient, amount, Integer::sum));
+                }
+                if (!known) {
+                    System.out.println("❌ Поръчка " + (i + 1) + " от партидата съдържа непозната напитка и е отказана.");
+                    continue;
+                }
+                boolean fits = true;
+                for (Map.Entry<String, Integer> entry : needed.entrySet()) {
+                    if (remaining.getOrDefault(entry.getKey(), 0) < entry.getValue()) {
+                        System.out.println("🚫 Поръчка " + (i + 1) + " от партидата е отказана: недостатъчно " + entry.getKey() + ".");
+                        fits = false;
+                        break;
+                    }
+                }
+                if (!fits) continue;
+
+                needed.forEach((ingredient, amount) -> remaining.merge(ingredient, -amount, Integer::sum));
+                for (String drinkName : order) {
+                    Drink drink = menu.get(drinkName);
+                    double cost = calculateDrinkCost(drink);
+                    events.add(new SaleEvent(drinkName, drink.getPrice(), cost, drink.getPrice() - cost, new HashMap<>(drink.getIngredients()), now()));
+                }
+                accepted[i] = true;
+                cups += order.size();
             }
+            recordAll(events);
+            if (cups > 0) {
+                System.out.println("🎉 УСПЕХ! Приготвени " + cups + " напитки в партида от " + orders.size() + " поръчки.");
+            }
+            return accepted;
+        }
 
-            double cost = calculateDrinkCost(drink);
-            double profit = drink.getPrice() - cost;
-            
-            consumeIngredients(drink);
-            
-            cash += drink.getPrice();
-            totalProfit += profit;
-            
-            salesHistory.add(new SaleLog(drinkName, drink.getPrice(), cost, profit));
-            
-            System.out.println("🎉 УСПЕХ! Приготвено: " + drinkName);
-            
-            saveState();
+        /**
+         * Release the journal file handle. The machine must not be mutated afterwards.
+         */
+        public synchronized void close() {
+            if (journal == null) return;
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.out.println("❌ Грешка при затваряне на журнала: " + e.getMessage());
+            }
+            journal = null;
         }
 
-        // CSV logging moved to UI layer to allow transaction-level writes
+        public synchronized void makeSingleDrink(String drinkName) {
+            long started = System.nanoTime();
+            try {
+                Drink drink = menu.get(drinkName);
 
-        private void consumeIngredients(Drink drink) {
-            for (Map.Entry<String, Integer> entry : drink.getIngredients().entrySet()) {
-                String ingredientName = entry.getKey();
-                int consumedAmount = entry.getValue();
-                inventory.computeIfPresent(ingredientName, (key, current) -> current - consumedAmount);
+                if (!hasEnoughIngredients(drink)) {
+                    System.out.println("❌ Грешка: Грешка в запасите при изпълнение на " + drinkName + ".");
+                    return;
+                }
+
+                double cost = calculateDrinkCost(drink);
+                double profit = drink.getPrice() - cost;
+            
+                record(new SaleEvent(drinkName, drink.getPrice(), cost, profit, new HashMap<>(drink.getIngredients()), now()));
+            
+                System.out.println("🎉 УСПЕХ! Приготвено: " + drinkName);
+            } finally {
+                MAKE_DRINK_TIME.recordSince(started);
             }
         }
+
+        // CSV logging moved to UI layer to allow transaction-level writes
         
-        public void addDrink(String name, double price, Map<String, Integer> ingredients) {
+        public synchronized void addDrink(String name, double price, Map<String, Integer> ingredients) {
             if (menu.containsKey(name)) {
                 System.out.println("❌ Напитка '" + name + "' вече съществува в менюто. Използвайте команда за редактиране.");
                 return;
             }
             
+            if (!ingredientsKnown(ingredients)) return;
+
+            Drink newDrink = new Drink(name, price, ingredients);
+            record(new DrinkAddedEvent(newDrink, now()));
+            System.out.println("✅ Успешно добавена нова напитка: " + newDrink);
+        }
+
+        /**
+         * Replace the definition of an existing drink, optionally renaming it. The drink keeps its image.
+         */
+        public synchronized void editDrink(String originalName, String name, double price, Map<String, Integer> ingredients) {
+            if (!menu.containsKey(originalName)) {
+                System.out.println("❌ Напитка '" + originalName + "' не е намерена в менюто.");
+                return;
+            }
+            if (!originalName.equals(name) && menu.containsKey(name)) {
+                System.out.println("❌ Напитка '" + name + "' вече съществува в менюто.");
+                return;
+            }
+            if (!ingredientsKnown(ingredients)) return;
+
+            Drink edited = new Drink(name, price, ingredients);
+            record(new DrinkEditedEvent(originalName, edited, now()));
+            System.out.println("✅ Успешно редактирана напитка: " + edited);
+        }
+
+        private boolean ingredientsKnown(Map<String, Integer> ingredients) {
             for (String ingredient : ingredients.keySet()) {
                 if (!ingredientCosts.containsKey(ingredient)) {
                     System.out.println("❌ Грешка: Съставката '" + ingredient + "' е непозната. Добавете я с цена преди да я използвате.");
-                    return;
-                }
-                if (!inventory.containsKey(ingredient)) {
-                    inventory.put(ingredient, 0);
+                    return false;
                 }
             }
-
-            Drink newDrink = new Drink(name, price, ingredients);
-            menu.put(name, newDrink);
-            System.out.println("✅ Успешно добавена нова напитка: " + newDrink);
-            saveState();
+            return true;
         }
 
-        public void deleteDrink(String name) {
+        public synchronized void deleteDrink(String name) {
             if (!menu.containsKey(name)) {
                 System.out.println("❌ Напитка '" + name + "' не е намерена в менюто.");
                 return;
             }
-            menu.remove(name);
-            // remove associated image if any
-            drinkImages.remove(name);
+            // also removes the associated image if any
+            record(new DrinkDeletedEvent(name, now()));
             System.out.println("✅ Успешно изтрита напитка: " + name);
-            saveState();
         }
         
-        public void displayProfitAndReport() {
+        public synchronized void displayProfitAndReport() {
             System.out.println("\n--- ФИНАНСОВ ОТЧЕТ И СТАТИСТИКА ---");
             System.out.println(String.format("💰 Събрани пари в касата (БРУТО): %.2f лв.", cash));
             System.out.println(String.format("📈 Обща реализирана ПЕЧАЛБА (НЕТО): %.2f лв.", totalProfit));
@@ -642,12 +1487,9 @@ public class CoffeeMachineSimulator {
 
             System.out.println(String.format("📊 Общ брой продадени напитки: %d", salesHistory.size()));
             
-            Map<String, Long> drinkCounts = salesHistory.stream()
-                .collect(Collectors.groupingBy(log -> log.drinkName, Collectors.counting()));
-                
             System.out.println("Топ 3 най-продавани напитки:");
-            drinkCounts.entrySet().stream()
-                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+            drinkSalesCounts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
                 .limit(3)
                 .forEach(entry -> System.out.println(String.format("  - %s: %d продажби", entry.getKey(), entry.getValue())));
 
@@ -659,57 +1501,148 @@ public class CoffeeMachineSimulator {
             System.out.println("------------------------------------");
         }
         
-        public double collectCash() {
+        public synchronized double collectCash() {
             double collected = this.cash;
-            this.cash = 0.0;
-            saveState(); 
+            record(new CashCollectedEvent(collected, now()));
             return collected;
         }
 
+        /**
+         * Return the money of a paid order. Fails (returns false) when the transaction was already
+         * refunded or the till does not hold the amount.
+         */
+        public synchronized boolean refund(String transactionId, double amount, double profit) {
+            if (transactionId != null && refundedTransactions.containsKey(transactionId)) {
+                System.out.println("❌ Транзакция " + transactionId + " вече е възстановена (" + refundedTransactions.get(transactionId) + ").");
+                return false;
+            }
+            if (amount <= 0 || amount > cash + 0.005) {
+                System.out.println(String.format("❌ Възстановяване на %.2f лв. не е възможно: в касата има %.2f лв.", amount, cash));
+                return false;
+            }
+            record(new RefundEvent(transactionId, amount, profit, now()));
+            System.out.println(String.format("✅ Възстановени %.2f лв. по транзакция %s.", amount, transactionId));
+            return true;
+        }
+
+        /** Whether a REFUND event was recorded for this transaction (journaled, so it survives a crash). */
+        public synchronized boolean isRefunded(String transactionId) {
+            return refundedTransactions.containsKey(transactionId);
+        }
+
+        /**
+         * The live menu; other threads change it, so read it inside {@code synchronized (machine)},
+         * or use {@link #getMenuSnapshot()}.
+         */
         public Map<String, Drink> getMenu() {
             return menu;
         }
-        
+
+        /** Copy of the menu taken under the machine lock, safe to read on any thread. */
+        public synchronized Map<String, Drink> getMenuSnapshot() {
+            return new HashMap<>(menu);
+        }
+
+        /**
+         * The live stock levels; read them inside {@code synchronized (machine)}, or use
+         * {@link #getInventorySnapshot()}.
+         */
         public Map<String, Integer> getInventory() {
             return inventory;
         }
+
+        /** Copy of the stock levels taken under the machine lock, safe to read on any thread. */
+        public synchronized Map<String, Integer> getInventorySnapshot() {
+            return new HashMap<>(inventory);
+        }
         
+        /**
+         * Read-only view over the sales history (no copy); iterate it inside
+         * {@code synchronized (machine)}. Callers that only need the tail should prefer
+         * {@link #getRecentSales(int)} or {@link #getSalesSince(int)}, which copy just that.
+         */
         public List<SaleLog> getSalesHistory() {
-            return new ArrayList<>(salesHistory);
+            return Collections.unmodifiableList(salesHistory);
         }
 
-        public double getCashAmount() {
+        public synchronized int getSalesCount() {
+            return salesHistory.size();
+        }
+
+        /**
+         * Copy of the last {@code n} sales, oldest first.
+         */
+        public synchronized List<SaleLog> getRecentSales(int n) {
+            int size = salesHistory.size();
+            int from = Math.max(0, size - Math.max(0, n));
+            return new ArrayList<>(salesHistory.subList(from, size));
+        }
+
+        /**
+         * Copy of the sales appended at or after position {@code index} (a cursor previously
+         * taken from {@link #getSalesCount()}).
+         */
+        public synchronized List<SaleLog> getSalesSince(int index) {
+            int size = salesHistory.size();
+            int from = Math.max(0, Math.min(index, size));
+            return new ArrayList<>(salesHistory.subList(from, size));
+        }
+
+        public synchronized double getCashAmount() {
             return cash;
         }
 
-        public double getTotalProfitAmount() {
+        public synchronized double getTotalProfitAmount() {
             return totalProfit;
         }
 
-        public Map<String, Double> getIngredientCosts() {
+        /** Copy of the unit costs, one entry per ingredient. */
+        public synchronized Map<String, Double> getIngredientCosts() {
             return new HashMap<>(ingredientCosts);
         }
 
+        public synchronized double getIngredientCost(String ingredient) {
+            return ingredientCosts.getOrDefault(ingredient, 0.0);
+        }
+
+        /** The menu's drinks of these names, in order; unknown names are skipped. */
+        public synchronized List<Drink> getDrinks(List<String> drinkNames) {
+            List<Drink> drinks = new ArrayList<>(drinkNames.size());
+            for (String name : drinkNames) {
+                Drink drink = menu.get(name);
+                if (drink != null) drinks.add(drink);
+            }
+            return drinks;
+        }
+
+        /**
+         * Ingredient cost (себестойност) of one portion of the given drink, or 0 if unknown.
+         */
+        public synchronized double getDrinkCost(String drinkName) {
+            Drink drink = menu.get(drinkName);
+            return drink == null ? 0.0 : calculateDrinkCost(drink);
+        }
+
         // image API
-        public void setDrinkImage(String drinkName, String path) {
+        public synchronized void setDrinkImage(String drinkName, String path) {
             if (!menu.containsKey(drinkName)) {
                 System.out.println("❌ Не може да се добави изображение: напитка '" + drinkName + "' не съществува.");
                 return;
             }
-            drinkImages.put(drinkName, path);
-            System.out.println("✅ Изображение прикачено към: " + drinkName);
-            saveState();
+            record(new DrinkImageEvent(drinkName, path, now()));
+            System.out.println(path != null ? "✅ Изображение прикачено към: " + drinkName : "✅ Изображението е премахнато от: " + drinkName);
         }
 
-        public String getDrinkImage(String drinkName) {
+        public synchronized String getDrinkImage(String drinkName) {
             return drinkImages.get(drinkName);
         }
 
-        public Map<String, String> getAllDrinkImages() {
+        /** Copy of the drink name to image path map. */
+        public synchronized Map<String, String> getAllDrinkImages() {
             return new HashMap<>(drinkImages);
         }
 
-        public void displayMenu() {
+        public synchronized void displayMenu() {
             System.out.println("\n--- МЕНЮ ---");
             if (menu.isEmpty()) {
                 System.out.println("Менюто е празно.");
@@ -722,7 +1655,7 @@ public class CoffeeMachineSimulator {
             System.out.println("------------");
         }
         
-        public void displayInventory() {
+        public synchronized void displayInventory() {
             System.out.println("\n--- ТЕКУЩИ ЗАПАСИ ---");
             inventory.forEach((ingredient, amount) -> {
                 double costPerUnit = ingredientCosts.getOrDefault(ingredient, 0.0);
@@ -733,7 +1666,7 @@ public class CoffeeMachineSimulator {
             System.out.println("----------------------");
         }
         
-        public void refillInventory(String ingredient, int amount) {
+        public synchronized void refillInventory(String ingredient, int amount) {
             if (amount <= 0) {
                  System.out.println("❌ Грешка при зареждане: Количеството трябва да е положително.");
                  return;
@@ -744,10 +1677,20 @@ public class CoffeeMachineSimulator {
                 return;
             }
 
-            inventory.compute(ingredient, (key, current) -> (current == null ? 0 : current) + amount);
+            record(new RefillEvent(ingredient, amount, now()));
             System.out.println(String.format("✅ Успешно заредени %d на %s.", amount, ingredient));
-            
-            saveState(); 
+        }
+
+        /**
+         * Set (or introduce) the unit cost of an ingredient. New ingredients start with zero stock.
+         */
+        public synchronized void setIngredientCost(String ingredient, double unitCost) {
+            if (ingredient == null || ingredient.trim().isEmpty() || unitCost < 0) {
+                System.out.println("❌ Грешка: Невалидна съставка или цена.");
+                return;
+            }
+            record(new IngredientCostEvent(ingredient.trim(), unitCost, now()));
+            System.out.println(String.format("✅ Цена/единица за %s: %.4f лв.", ingredient.trim(), unitCost));
         }
     }
 
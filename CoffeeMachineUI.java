@@ -1,4 +1,3 @@
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 
@@ -9,24 +8,46 @@ import java.io.*;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.LocalDateTime;
+import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.List;
-import java.text.DecimalFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
 
 
 public class CoffeeMachineUI {
 
     private CoffeeMachineSimulator.CoffeeMachine machine;
+    private SalesCsvLog salesCsv;
+    private OrderQueue orderQueue;
+    private TransactionLedger ledger;
+    private PaymentPipeline payments;
+    private MetricsSampler metrics;
+    private ReceiptSpooler receipts;
+    private final Config config;
     private JFrame frame;
-    private DefaultListModel<String> menuListModel;
-    private JList<String> menuList;
-    private JList<String> orderList;
+    private DefaultListModel<CoffeeMachineSimulator.Drink> menuListModel;
+    private JList<CoffeeMachineSimulator.Drink> menuList;
+    private JList<CoffeeMachineSimulator.Drink> orderList;
+    private final Set<String> unavailableDrinks = new HashSet<>(); // EDT only; shown as [ИЗЧЕРПАНО]
     private JTextArea inventoryText;
-    private JTextArea salesText;
+    private UiChangeNotifier changes;
+    private SalesTableModel salesModel;
+    private JTable salesTable;
+    private JLabel salesSummaryLabel;
+    private JComboBox<String> salesDrinkFilter;
+    private JComboBox<String> salesMethodFilter;
     private JTextArea consoleText;
+    private ConsoleSink consoleSink;
     private JLabel imageLabel;
+    private ThumbnailStore thumbnails;
+    private DrinkImageCache imageCache;
+    private String shownImagePath; // path the image label is currently waiting for or showing
     private boolean isAdmin = false;
 
     
@@ -38,34 +59,115 @@ public class CoffeeMachineUI {
     private JButton adminRefillBtn;
     private JButton adminCollectBtn;
     private JButton adminReportBtn;
+    private JButton adminRefundBtn;
+    private JButton adminImportBtn;
     private JButton adminSetBackgroundBtn;
 
     private JButton viewPriceBtn;
 
     
-    private JTabbedPane rightTabs;
+    private JTabbedPane rightTabs; // built on the first admin login
+    private boolean inventoryStale = true; // admin tabs missed changes while hidden
+    private boolean salesStale = true;
     private JTabbedPane leftTabs;
     private JSplitPane splitPane;
     private JButton adminLoginBtn;
 
 
     private BackgroundPanel backgroundPanel;
+    private JPanel startupPanel; // loading screen, until the machine is loaded
+    private JLabel statusLabel;
+    private final long launchNanos;
 
     private static final DateTimeFormatter TS_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private static final DecimalFormat PRICE_FMT = new DecimalFormat("0.00");
+
+    // Опашка за поръчки: капацитет и брой поръчки, приготвяни заедно
+    private static final int ORDER_QUEUE_CAPACITY = 32;
+    private static final int ORDER_BATCH_SIZE = 8;
 
     // *** НОВО *** Праг за сигнализиране на нисък инвентар
     private static final int LOW_STOCK_THRESHOLD = 100;
 
+    // Колко съседни напитки в списъка да се зареждат предварително (изображения)
+    private static final int IMAGE_PREFETCH_DISTANCE = 2;
+    private static final Dimension DRINK_IMAGE_SIZE = new Dimension(260, 200);
+
+    // Конзола: пазят се последните N реда, екранът се обновява най-много веднъж на кадър
+    private static final int CONSOLE_MAX_LINES = 2000;
+    private static final int CONSOLE_FRAME_MS = 33;
+
+    private static final String SALES_FILTER_ALL = "Всички";
+
+    // Табло: по една проба в секунда, пазят се последните 5 минути
+    private static final int DASHBOARD_SAMPLES = 300;
+    private static final long DASHBOARD_SAMPLE_MS = 1000;
+
+    // Квитанции: receipts/<дата>/shift-<час>.txt, смени по 8 часа от полунощ
+    private static final int RECEIPT_SHIFT_HOURS = 8;
+
+    // Поръчка от UI: от изпращането (след плащането) до резултата на EDT; вижда се през JMX
+    private static final Metrics.Histogram ORDER_TIME = Metrics.getDefault().histogram("ui.order");
+    private static final Metrics.Counter ORDERS_COMPLETED = Metrics.getDefault().counter("ui.orders.completed");
+    private static final Metrics.Counter ORDERS_FAILED = Metrics.getDefault().counter("ui.orders.failed");
+
+    /** Command line options of the Swing front-end. */
+    static class Config {
+        /** Unattended kiosk: receipts are only spooled (and printed), no receipt dialog. */
+        boolean kiosk;
+        /** Send every receipt to the local receipt printer (a console stub). */
+        boolean printReceipts;
+
+        static Config parse(String[] args) {
+            Config c = new Config();
+            for (String arg : args) {
+                switch (arg) {
+                    case "--kiosk": c.kiosk = true; break;
+                    case "--print": c.printReceipts = true; break;
+                    default:
+                        throw new IllegalArgumentException("Непознат аргумент: " + arg);
+                }
+            }
+            return c;
+        }
+    }
+
     public CoffeeMachineUI() {
+        this(new Config(), System.nanoTime());
+    }
+
+    /**
+     * Show the window at once and load everything else in the background: the machine state and
+     * the background image are loaded in parallel, and each part of the window is filled in on the
+     * EDT when its data is ready. The admin tabs are only built on the first admin login.
+     *
+     * @param launchNanos {@link System#nanoTime()} at launch, for the time-to-interactive report
+     */
+    public CoffeeMachineUI(Config config, long launchNanos) {
+        this.config = config;
+        this.launchNanos = launchNanos;
+
         // Console for internal logs
         consoleText = new JTextArea();
         consoleText.setEditable(false);
         consoleText.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 14));
         redirectSystemStreamsToConsole(consoleText);
 
-        // instantiate machine AFTER redirect so logs show up in console area
-        machine = new CoffeeMachineSimulator.CoffeeMachine();
+        // The machine state loads in the background; these do not need it
+        CompletableFuture<CoffeeMachineSimulator.CoffeeMachine> machineLoad =
+                CompletableFuture.supplyAsync(CoffeeMachineSimulator.CoffeeMachine::new);
+        salesCsv = new SalesCsvLog(new File(SalesCsvLog.DEFAULT_FILE));
+        changes = new UiChangeNotifier();
+        salesCsv.addChangeListener(changes::salesAppended);
+        // Умалени копия на изображенията (thumbnails/), създавани при прикачване към напитка
+        thumbnails = new ThumbnailStore(new File(ThumbnailStore.DEFAULT_DIR), List.of(DRINK_IMAGE_SIZE), ForkJoinPool.commonPool());
+        imageCache = new DrinkImageCache(48, 2, thumbnails);
+        // Квитанциите се записват (и печатат) на отделна нишка; останалите в опашката - при изход
+        receipts = new ReceiptSpooler(new File(ReceiptSpooler.DEFAULT_DIR), ReceiptSpooler.Template.standard(),
+                config.printReceipts ? new ReceiptSpooler.ConsolePrinter() : null, RECEIPT_SHIFT_HOURS);
+        receipts.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(receipts::stop, "receipt-spooler-flush"));
+        Metrics.getDefault().gauge("receipts.pending", receipts::pending);
+        Metrics.getDefault().registerPlatformMBean();
 
         frame = new JFrame("Coffee Machine Simulator");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -86,15 +188,109 @@ public class CoffeeMachineUI {
 
         adminLoginBtn = new JButton("Вход Админ");
         adminLoginBtn.addActionListener(e -> handleAdminToggle("123456789"));
+        adminLoginBtn.setEnabled(false); // until the machine is loaded
         topPanel.add(adminLoginBtn, BorderLayout.EAST);
-
         backgroundPanel.add(topPanel, BorderLayout.NORTH);
 
+        // Until the machine is loaded the center shows a loading screen
+        startupPanel = buildStartupPanel();
+        backgroundPanel.add(startupPanel, BorderLayout.CENTER);
+
+        // Status bar
+        statusLabel = new JLabel("Зареждане...");
+        statusLabel.setBorder(new EmptyBorder(6,6,6,6));
+        statusLabel.setOpaque(false);
+        backgroundPanel.add(statusLabel, BorderLayout.SOUTH);
+
+        frame.setVisible(true);
+        System.out.printf("Прозорецът е показан след %d ms%n", millisSinceLaunch());
+
+        // auto load bg_coffee.jpg if present
+        File autoBg = new File("bg_coffee.jpg");
+        if (autoBg.exists()) {
+            loadBackgroundImage(autoBg, 0.25f);
+        }
+
+        machineLoad.whenComplete((m, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                cause.printStackTrace();
+                JOptionPane.showMessageDialog(frame, "Грешка при зареждане на машината: " + cause, "Грешка", JOptionPane.ERROR_MESSAGE);
+                System.exit(1);
+            }
+            onMachineLoaded(m);
+        }));
+    }
+
+    /** Loading screen shown in the center of the window while the machine state is read. */
+    private JPanel buildStartupPanel() {
+        JProgressBar progress = new JProgressBar();
+        progress.setIndeterminate(true);
+        JLabel label = new JLabel("Зареждане на машината...");
+        label.setHorizontalAlignment(JLabel.CENTER);
+
+        JPanel box = new JPanel(new BorderLayout(0, 8));
+        box.setOpaque(false);
+        box.add(label, BorderLayout.NORTH);
+        box.add(progress, BorderLayout.CENTER);
+
+        JPanel panel = new JPanel(new GridBagLayout());
+        panel.setOpaque(false);
+        panel.add(box);
+        return panel;
+    }
+
+    /**
+     * Second stage of startup, on the EDT: wire the loaded machine and put the menu and order tabs
+     * in place of the loading screen.
+     */
+    private void onMachineLoaded(CoffeeMachineSimulator.CoffeeMachine loaded) {
+        machine = loaded;
+        ledger = new TransactionLedger(machine, salesCsv, TransactionIdGenerator.getDefault());
+        orderQueue = new OrderQueue(machine, salesCsv, ORDER_QUEUE_CAPACITY, ORDER_BATCH_SIZE);
+        orderQueue.setBrewScheduler(new BrewScheduler(), BrewScheduler.SIMULATOR_TIME_SCALE);
+        // Запис на поръчките и админ командите за по-късно възпроизвеждане (RequestReplay)
+        RequestLog requestLog = new RequestLog(new File(RequestLog.DEFAULT_FILE), machine.getClock());
+        orderQueue.setRequestLog(requestLog);
+        machine.addEventListener(requestLog);
+        machine.addEventListener(changes);
+        machine.addEventListener(thumbnails);
+        orderQueue.start();
+        Metrics.getDefault().gauge("orders.queueDepth", orderQueue::size);
+        // Картовите плащания се авторизират асинхронно: до 3 опита по 3 s, между тях 250/500 ms
+        payments = new PaymentPipeline(new LocalPaymentProcessor(), 3000, 3, 250);
+
         // Center split pane
         splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT);
         splitPane.setResizeWeight(0.55);
         splitPane.setOpaque(false);
+        splitPane.setLeftComponent(buildLeftTabs());
+        // Initially hide right panel for non-admin
+        splitPane.setRightComponent(new JPanel());
+        backgroundPanel.remove(startupPanel);
+        startupPanel = null;
+        backgroundPanel.add(splitPane, BorderLayout.CENTER);
+        backgroundPanel.revalidate();
+        backgroundPanel.repaint();
+
+        // initial data, then follow changes
+        refreshMenuList();
+        updateDisplayedImageForSelectedMenuItem();
+        subscribeToChanges();
+        updateAdminState();
+        adminLoginBtn.setEnabled(true);
+        statusLabel.setText("Готово.");
+        System.out.printf("Менюто е готово за поръчки след %d ms%n", millisSinceLaunch());
+    }
 
+    private long millisSinceLaunch() {
+        return (System.nanoTime() - launchNanos) / 1_000_000;
+    }
+
+    /**
+     * Menu and order tabs, which share one list model of drinks.
+     */
+    private JTabbedPane buildLeftTabs() {
         // Left tabs (Menu & Order)
         leftTabs = new JTabbedPane();
         leftTabs.setOpaque(false);
@@ -102,6 +298,7 @@ public class CoffeeMachineUI {
         // Menu tab
         menuListModel = new DefaultListModel<>();
         menuList = new JList<>(menuListModel);
+        menuList.setCellRenderer(new DrinkCellRenderer(unavailableDrinks));
         menuList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         menuList.setBackground(new Color(240, 255, 255, 220));
         menuList.setOpaque(true);
@@ -113,7 +310,7 @@ public class CoffeeMachineUI {
         imageLabel = new JLabel(" ");
         imageLabel.setHorizontalAlignment(JLabel.CENTER);
         imageLabel.setVerticalAlignment(JLabel.CENTER);
-        imageLabel.setPreferredSize(new Dimension(260, 200));
+        imageLabel.setPreferredSize(DRINK_IMAGE_SIZE);
         JPanel imageContainer = new JPanel(new BorderLayout());
         imageContainer.setBorder(BorderFactory.createTitledBorder("Изображение на напитката"));
         imageContainer.setOpaque(false);
@@ -139,6 +336,7 @@ public class CoffeeMachineUI {
 
         // Order tab
         orderList = new JList<>(menuListModel); // Uses the *same* model
+        orderList.setCellRenderer(new DrinkCellRenderer(unavailableDrinks));
         orderList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
         orderList.setBackground(new Color(240,255,255,220));
         orderList.setOpaque(true);
@@ -168,22 +366,6 @@ public class CoffeeMachineUI {
         // When switching between Menu and Order tabs, update the displayed image
         leftTabs.addChangeListener(e -> updateDisplayedImageForSelectedMenuItem());
 
-        splitPane.setLeftComponent(leftTabs);
-
-        // Right tabs (admin-only)
-        rightTabs = buildRightTabs();
-
-        // Initially hide right panel for non-admin
-        splitPane.setRightComponent(new JPanel());
-
-        backgroundPanel.add(splitPane, BorderLayout.CENTER);
-
-        // Status bar
-        JLabel status = new JLabel("Готово.");
-        status.setBorder(new EmptyBorder(6,6,6,6));
-        status.setOpaque(false);
-        backgroundPanel.add(status, BorderLayout.SOUTH);
-
         // selection listener to update image
         menuList.addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
@@ -199,57 +381,44 @@ public class CoffeeMachineUI {
             }
         });
 
-        // initial data
-        refreshAllUI();
-
-        // auto load bg_coffee.jpg if present
-        File autoBg = new File("bg_coffee.jpg");
-        if (autoBg.exists()) {
-            try {
-                BufferedImage img = ImageIO.read(autoBg);
-                if (img != null) backgroundPanel.setBackgroundImage(img, 0.25f);
-            } catch (IOException ex) {
-                System.err.println("bg_coffee.jpg load failed: " + ex.getMessage());
-            }
-        }
-
-        // initial admin state
-        updateAdminState();
-
-        frame.setVisible(true);
+        return leftTabs;
     }
 
     /**
-     * Refresh all main UI areas. Called manually after state-changing actions.
+     * Machine events and sales log appends, coalesced per EDT tick, update only the affected panels.
+     * The admin panels are not refreshed while hidden; they are marked stale and caught up when shown.
      */
-    private void refreshAllUI() {
-        try {
-            int menuIdx = menuList.getSelectedIndex();
-            
-            refreshMenuList();
-            refreshInventoryArea();
-            refreshSalesArea();
-            updateDisplayedImageForSelectedMenuItem();
-
-            if (menuIdx >= 0 && menuIdx < menuListModel.getSize()) {
-                menuList.setSelectedIndex(menuIdx);
-            }
-           
-            if (backgroundPanel != null) {
-                backgroundPanel.revalidate();
-                backgroundPanel.repaint();
+    private void subscribeToChanges() {
+        changes.subscribe(EnumSet.of(UiChangeNotifier.Change.MENU, UiChangeNotifier.Change.INVENTORY), c -> {
+            if (c.contains(UiChangeNotifier.Change.MENU)) {
+                refreshMenuList();
+                updateDisplayedImageForSelectedMenuItem();
+            } else {
+                updateMenuAvailability(c.getIngredients());
             }
-            if (frame != null) {
-                frame.revalidate();
-                frame.repaint();
+        });
+        changes.subscribe(EnumSet.of(UiChangeNotifier.Change.INVENTORY, UiChangeNotifier.Change.CASH), c -> {
+            if (adminTabsShown()) refreshInventoryArea();
+            else inventoryStale = true;
+        });
+        changes.subscribe(EnumSet.of(UiChangeNotifier.Change.SALES), c -> {
+            if (adminTabsShown()) refreshSalesArea();
+            else salesStale = true;
+        });
+        changes.subscribe(EnumSet.of(UiChangeNotifier.Change.IMAGE), c -> {
+            CoffeeMachineSimulator.Drink selected = menuList.getSelectedValue();
+            if (selected != null && c.getDrinks().contains(selected.getName())) {
+                updateDisplayedImageForSelectedMenuItem();
             }
-        } catch (Exception ex) {
-            System.err.println("Error during UI refresh: " + ex.getMessage());
-        }
+        });
+    }
+
+    private boolean adminTabsShown() {
+        return isAdmin && rightTabs != null;
     }
 
     /**
-     * Build right-side tabs (inventory, sales, console, admin).
+     * Build right-side tabs (inventory, sales, console, admin, dashboard). Called on the first admin login.
      */
     private JTabbedPane buildRightTabs() {
         JTabbedPane tabs = new JTabbedPane();
@@ -288,18 +457,58 @@ public class CoffeeMachineUI {
         tabs.addTab("Запаси", invPanel);
 
         // Sales
-        salesText = new JTextArea();
-        salesText.setEditable(false);
-        salesText.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 14));
-        salesText.setBackground(new Color(255,240,255,220));
-        salesText.setOpaque(true);
-        JScrollPane salesScroll = new JScrollPane(salesText);
+        // Таблицата държи само позициите на редовете; видимите редове се четат от CSV при показване
+        salesModel = new SalesTableModel(salesCsv.getFile());
+        salesTable = new JTable(salesModel);
+        salesTable.setFillsViewportHeight(true);
+        salesTable.setBackground(new Color(255,240,255,220));
+        salesTable.getTableHeader().setReorderingAllowed(false);
+        salesTable.getTableHeader().addMouseListener(new java.awt.event.MouseAdapter() {
+            @Override
+            public void mouseClicked(java.awt.event.MouseEvent e) {
+                int column = salesTable.columnAtPoint(e.getPoint());
+                SalesLogIndex.SortKey key = SalesTableModel.sortKeyOf(salesTable.convertColumnIndexToModel(column));
+                if (key != null) salesModel.sortBy(key);
+            }
+        });
+        salesModel.addTableModelListener(e -> updateSalesSummary());
+        JScrollPane salesScroll = new JScrollPane(salesTable);
         salesScroll.setOpaque(false);
         salesScroll.getViewport().setOpaque(false);
 
+        JPanel salesFilters = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        salesFilters.setOpaque(false);
+        JTextField salesFromField = new JTextField(8);
+        JTextField salesToField = new JTextField(8);
+        salesDrinkFilter = new JComboBox<>(new String[]{SALES_FILTER_ALL});
+        salesMethodFilter = new JComboBox<>(new String[]{SALES_FILTER_ALL});
+        salesFilters.add(new JLabel("От (гггг-мм-дд):"));
+        salesFilters.add(salesFromField);
+        salesFilters.add(new JLabel("До:"));
+        salesFilters.add(salesToField);
+        salesFilters.add(new JLabel("Напитка:"));
+        salesFilters.add(salesDrinkFilter);
+        salesFilters.add(new JLabel("Метод:"));
+        salesFilters.add(salesMethodFilter);
+        JButton applySalesFilter = new JButton("Филтрирай");
+        applySalesFilter.addActionListener(e -> applySalesFilter(salesFromField.getText(), salesToField.getText()));
+        salesFilters.add(applySalesFilter);
+        JButton clearSalesFilter = new JButton("Всички");
+        clearSalesFilter.addActionListener(e -> {
+            salesFromField.setText("");
+            salesToField.setText("");
+            salesDrinkFilter.setSelectedItem(SALES_FILTER_ALL);
+            salesMethodFilter.setSelectedItem(SALES_FILTER_ALL);
+            salesModel.setFilter(SalesLogIndex.Filter.all());
+        });
+        salesFilters.add(clearSalesFilter);
+        salesSummaryLabel = new JLabel(" ");
+        salesFilters.add(salesSummaryLabel);
+
         JPanel salesPanel = new JPanel(new BorderLayout());
         salesPanel.setBorder(new EmptyBorder(6,6,6,6));
         salesPanel.setOpaque(false);
+        salesPanel.add(salesFilters, BorderLayout.NORTH);
         salesPanel.add(salesScroll, BorderLayout.CENTER);
 
         JPanel salesButtons = new JPanel(new FlowLayout(FlowLayout.LEFT));
@@ -312,9 +521,13 @@ public class CoffeeMachineUI {
         adminReportBtn.addActionListener(e -> machine.displayProfitAndReport());
         salesButtons.add(adminReportBtn);
 
+        adminRefundBtn = new JButton("Търси / възстанови транзакция");
+        adminRefundBtn.addActionListener(e -> handleTransactionLookup());
+        salesButtons.add(adminRefundBtn);
+
         JButton exportCsvBtn = new JButton("Експортирай CSV");
         exportCsvBtn.addActionListener(e -> {
-            File csv = new File("sales_log.csv");
+            File csv = salesCsv.getFile();
             if (!csv.exists()) { JOptionPane.showMessageDialog(frame, "Няма CSV файл за експорт.", "Експорт", JOptionPane.INFORMATION_MESSAGE); return; }
             JFileChooser chooser = new JFileChooser();
             chooser.setDialogTitle("Експортирай sales_log.csv като...");
@@ -332,15 +545,18 @@ public class CoffeeMachineUI {
         });
         salesButtons.add(exportCsvBtn);
 
+        adminImportBtn = new JButton("Импортирай CSV");
+        adminImportBtn.addActionListener(e -> handleSalesImport());
+        salesButtons.add(adminImportBtn);
+
         JButton clearCsvBtn = new JButton("Изтрий CSV");
         clearCsvBtn.addActionListener(e -> {
-            File csv = new File("sales_log.csv");
+            File csv = salesCsv.getFile();
             if (!csv.exists()) { JOptionPane.showMessageDialog(frame, "Няма CSV файл за изтриване.", "Изтриване", JOptionPane.INFORMATION_MESSAGE); return; }
             int ans = JOptionPane.showConfirmDialog(frame, "Сигурни ли сте, че искате да изтриете sales_log.csv?", "Потвърждение", JOptionPane.YES_NO_OPTION);
             if (ans != JOptionPane.YES_OPTION) return;
-            try (FileWriter fw = new FileWriter(csv, false)) { fw.write(""); }
+            try { salesCsv.clear(); }
             catch (IOException ex) { JOptionPane.showMessageDialog(frame, "Грешка при изтриване: " + ex.getMessage(), "Грешка", JOptionPane.ERROR_MESSAGE); }
-            refreshSalesArea();
         });
         salesButtons.add(clearCsvBtn);
 
@@ -362,7 +578,7 @@ public class CoffeeMachineUI {
         JPanel consoleButtons = new JPanel(new FlowLayout(FlowLayout.LEFT));
         consoleButtons.setOpaque(false);
         JButton clearConsoleBtn = new JButton("Изчисти конзолата");
-        clearConsoleBtn.addActionListener(e -> consoleText.setText(""));
+        clearConsoleBtn.addActionListener(e -> consoleSink.clear());
         consoleButtons.add(clearConsoleBtn);
         consolePanel.add(consoleButtons, BorderLayout.SOUTH);
         tabs.addTab("Конзола", consolePanel);
@@ -406,6 +622,13 @@ public class CoffeeMachineUI {
         adminPanel.add(adminTop, BorderLayout.NORTH);
         tabs.addTab("Админ", adminPanel);
 
+        // Dashboard: sampled only from the first admin login on, kiosks never pay for it
+        metrics = new MetricsSampler(machine, orderQueue, DASHBOARD_SAMPLES, DASHBOARD_SAMPLE_MS);
+        DashboardPanel dashboard = new DashboardPanel(metrics);
+        metrics.addListener(() -> SwingUtilities.invokeLater(dashboard::sampleAdded));
+        metrics.start();
+        tabs.addTab("Табло", dashboard);
+
         return tabs;
     }
 
@@ -414,9 +637,16 @@ public class CoffeeMachineUI {
      */
     private void updateAdminState() {
         boolean enable = isAdmin;
+        if (enable && rightTabs == null) {
+            long started = System.nanoTime();
+            rightTabs = buildRightTabs();
+            System.out.printf("Админ панелите са изградени за %d ms%n", (System.nanoTime() - started) / 1_000_000);
+        }
         if (adminRefillBtn != null) adminRefillBtn.setEnabled(enable);
         if (adminCollectBtn != null) adminCollectBtn.setEnabled(enable);
         if (adminReportBtn != null) adminReportBtn.setEnabled(enable);
+        if (adminRefundBtn != null) adminRefundBtn.setEnabled(enable);
+        if (adminImportBtn != null) adminImportBtn.setEnabled(enable);
         if (adminAddDrinkBtn != null) adminAddDrinkBtn.setEnabled(enable);
         if (adminEditDrinkBtn != null) adminEditDrinkBtn.setEnabled(enable); // *** НОВО ***
         if (adminDeleteDrinkBtn != null) adminDeleteDrinkBtn.setEnabled(enable);
@@ -427,7 +657,13 @@ public class CoffeeMachineUI {
         if (viewPriceBtn != null) viewPriceBtn.setVisible(enable);
         if (adminLoginBtn != null) adminLoginBtn.setText(enable ? "Изход Админ" : "Вход Админ");
 
+        if (consoleSink != null) consoleSink.setShown(enable);
         if (enable) {
+            // catch up on what changed while the admin tabs were hidden (or not built yet)
+            if (inventoryStale) refreshInventoryArea();
+            if (salesStale) refreshSalesArea();
+            inventoryStale = false;
+            salesStale = false;
             splitPane.setRightComponent(rightTabs);
             SwingUtilities.invokeLater(() -> {
                 splitPane.setDividerLocation(0.55);
@@ -442,57 +678,92 @@ public class CoffeeMachineUI {
                 splitPane.repaint();
             });
         }
-
-        refreshMenuList();
     }
 
     /**
      * *** ПРОМЕНЕН МЕТОД (за Точка 2) ***
      * Refresh the menu list model from the simulator's menu.
-     * Each entry uses the format: "Name — PRICE лв." so other code can split on " — ".
+     * The model holds the drinks themselves; {@link DrinkCellRenderer} shows them as "Name — PRICE лв.".
      * Вече проверява наличностите и добавя "[ИЗЧЕРПАНО]", ако напитката не може да бъде направена.
      */
     private void refreshMenuList() {
+        CoffeeMachineSimulator.Drink selected = menuList.getSelectedValue();
+        String selectedName = selected != null ? selected.getName() : null;
+        List<CoffeeMachineSimulator.Drink> drinks = new ArrayList<>(machine.getMenuSnapshot().values());
+        drinks.sort(Comparator.comparing(CoffeeMachineSimulator.Drink::getName));
+        Map<String, Integer> inventory = machine.getInventorySnapshot();
+
+        unavailableDrinks.clear();
         menuListModel.clear();
-        Map<String, CoffeeMachineSimulator.Drink> menu = machine.getMenu();
-        List<String> names = new ArrayList<>(menu.keySet());
-        Collections.sort(names);
-        
-        for (String name : names) {
-            CoffeeMachineSimulator.Drink d = menu.get(name);
-            if (d != null) {
-                // *** НОВА ПРОВЕРКА ***
-                // Използваме Collections.singletonList, за да проверим само за 1 брой от напитката
-                boolean canMake = machine.checkTotalIngredients(Collections.singletonList(name));
-                String statusTag = canMake ? "" : " [ИЗЧЕРПАНО]";
-                
-                menuListModel.addElement(String.format("%s — %.2f лв.%s", name, d.getPrice(), statusTag));
+        for (CoffeeMachineSimulator.Drink d : drinks) {
+            if (!canMake(d, inventory)) unavailableDrinks.add(d.getName());
+            menuListModel.addElement(d);
+        }
+        if (selectedName != null) {
+            for (int i = 0; i < menuListModel.getSize(); i++) {
+                if (menuListModel.get(i).getName().equals(selectedName)) {
+                    menuList.setSelectedIndex(i);
+                    break;
+                }
             }
         }
     }
 
+    /**
+     * Re-check the [ИЗЧЕРПАНО] tag of the drinks that use one of these ingredients; only rows
+     * whose tag changes are repainted.
+     */
+    private void updateMenuAvailability(Set<String> ingredients) {
+        Map<String, Integer> inventory = machine.getInventorySnapshot();
+        for (int i = 0; i < menuListModel.getSize(); i++) {
+            CoffeeMachineSimulator.Drink d = menuListModel.get(i);
+            if (Collections.disjoint(d.getIngredients().keySet(), ingredients)) continue;
+            boolean unavailable = !canMake(d, inventory);
+            boolean changed = unavailable ? unavailableDrinks.add(d.getName()) : unavailableDrinks.remove(d.getName());
+            if (changed) menuListModel.set(i, d); // same element: fires a change for this row only
+        }
+    }
+
+    private static boolean canMake(CoffeeMachineSimulator.Drink d, Map<String, Integer> inventory) {
+        // Наличност за 1 брой, сметната от копие на запасите (без отпечатване в конзолата)
+        for (Map.Entry<String, Integer> e : d.getIngredients().entrySet()) {
+            if (inventory.getOrDefault(e.getKey(), 0) < e.getValue()) return false;
+        }
+        return true;
+    }
+
+    /** Shows a drink as "Name — PRICE лв.", tagged [ИЗЧЕРПАНО] when it cannot be made. */
+    private static class DrinkCellRenderer extends DefaultListCellRenderer {
+        private static final long serialVersionUID = 1L;
+        private final Set<String> unavailable;
+
+        DrinkCellRenderer(Set<String> unavailable) {
+            this.unavailable = unavailable;
+        }
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+            Object text = value;
+            if (value instanceof CoffeeMachineSimulator.Drink) {
+                CoffeeMachineSimulator.Drink d = (CoffeeMachineSimulator.Drink) value;
+                text = String.format("%s — %.2f лв.%s", d.getName(), d.getPrice(), unavailable.contains(d.getName()) ? " [ИЗЧЕРПАНО]" : "");
+            }
+            return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+        }
+    }
+
 
     /**
      * Show the calculated ingredient cost (себестойност) for the selected drink.
      */
     private void showSelectedCost() {
-        String selected = menuList.getSelectedValue();
+        CoffeeMachineSimulator.Drink selected = menuList.getSelectedValue();
         if (selected == null) {
             JOptionPane.showMessageDialog(frame, "Моля, изберете напитка.", "Инфо", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
-        String name = selected.split(" — ")[0].trim();
-        CoffeeMachineSimulator.Drink d = machine.getMenu().get(name);
-        if (d == null) {
-            JOptionPane.showMessageDialog(frame, "Напитката не е намерена: " + name, "Грешка", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        double cost = 0.0;
-        Map<String, Double> costs = machine.getIngredientCosts();
-        for (Map.Entry<String, Integer> en : d.getIngredients().entrySet()) {
-            double unit = costs.getOrDefault(en.getKey(), 0.0);
-            cost += unit * en.getValue();
-        }
+        String name = selected.getName();
+        double cost = machine.getDrinkCost(name);
         JOptionPane.showMessageDialog(frame, String.format("Себестойност на '%s': %.4f лв.", name, cost), "Себестойност", JOptionPane.INFORMATION_MESSAGE);
     }
 
@@ -514,7 +785,6 @@ public class CoffeeMachineUI {
             }
         }
         updateAdminState();
-        refreshAllUI();
     }
 
     // ---------------- Background image handling ----------------
@@ -530,8 +800,7 @@ public class CoffeeMachineUI {
         if (res != JFileChooser.APPROVE_OPTION) return;
         File f = chooser.getSelectedFile();
         try {
-            BufferedImage img = ImageIO.read(f);
-            if (img == null) {
+            if (ThumbnailStore.probe(f) == null) {
                 JOptionPane.showMessageDialog(frame, "Файлът не е изображение.", "Грешка", JOptionPane.ERROR_MESSAGE);
                 return;
             }
@@ -546,13 +815,34 @@ public class CoffeeMachineUI {
                 if (alpha < 0f) alpha = 0f;
                 if (alpha > 1f) alpha = 1f;
             }
-            backgroundPanel.setBackgroundImage(img, alpha);
+            loadBackgroundImage(f, alpha);
             JOptionPane.showMessageDialog(frame, "Фонът е зададен.", "Успех", JOptionPane.INFORMATION_MESSAGE);
         } catch (IOException ex) {
             JOptionPane.showMessageDialog(frame, "Грешка при зареждане на изображението: " + ex.getMessage(), "Грешка", JOptionPane.ERROR_MESSAGE);
         }
     }
 
+    /**
+     * Load a background through the thumbnail store (reduced to what covers the screen) off the EDT.
+     */
+    private void loadBackgroundImage(File file, float alpha) {
+        Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return thumbnails.load(file, screen.width, screen.height, ThumbnailStore.Fit.COVER);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }).whenComplete((img, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                System.err.println(file.getName() + " load failed: " + cause.getMessage());
+            } else if (img != null) {
+                backgroundPanel.setBackgroundImage(img, alpha);
+            }
+        }));
+    }
+
     // ---------------- Payment: Luhn, processing ----------------
 
     private static class PaymentResult {
@@ -563,14 +853,30 @@ public class CoffeeMachineUI {
         final String cardLast4;
         final String transactionId;
         final String timestamp;
+        // Картова авторизация в процес; null за плащане в брой
+        final CompletableFuture<PaymentProcessor.Authorization> authorization;
 
         PaymentResult(boolean success, String status, double paidAmount, double change, String cardLast4, String txId, String ts) {
+            this(success, status, paidAmount, change, cardLast4, txId, ts, null);
+        }
+
+        PaymentResult(boolean success, String status, double paidAmount, double change, String cardLast4, String txId, String ts,
+                      CompletableFuture<PaymentProcessor.Authorization> authorization) {
             this.success = success; this.status = status; this.paidAmount = paidAmount; this.change = change; this.cardLast4 = cardLast4; this.transactionId = txId; this.timestamp = ts;
+            this.authorization = authorization;
         }
 
         static PaymentResult cancelled() { return new PaymentResult(false, "CANCELLED", 0, 0, null, null, null); }
     }
 
+    private static class PaymentDeclinedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        PaymentDeclinedException(String reason) {
+            super(reason);
+        }
+    }
+
     private static boolean luhnCheck(String number) {
         int sum = 0;
         boolean alternate = false;
@@ -586,10 +892,11 @@ public class CoffeeMachineUI {
         return sum % 10 == 0;
     }
 
-    private PaymentResult processPayment(double totalCost) {
+    private PaymentResult processPayment(double totalCost, List<String> names) {
         String[] options = {"Плащане в брой  💵", "Плащане с карта  💳", "Откажи"};
+        double etaSeconds = orderQueue.estimateReadyMillis(names) / 1000.0;
         int choice = JOptionPane.showOptionDialog(frame,
-                String.format("Обща цена: %.2f лв.\nИзберете метод на плащане:", totalCost),
+                String.format("Обща цена: %.2f лв.\nОчаквано време за приготвяне: ~%.1f сек.\nИзберете метод на плащане:", totalCost, etaSeconds),
                 "Плащане",
                 JOptionPane.DEFAULT_OPTION,
                 JOptionPane.QUESTION_MESSAGE,
@@ -599,7 +906,7 @@ public class CoffeeMachineUI {
             return PaymentResult.cancelled();
         }
 
-        String txId = generateTransactionId();
+        String txId = TransactionIdGenerator.getDefault().next();
         String timestamp = LocalDateTime.now().format(TS_FMT);
 
         if (choice == 0) { // cash
@@ -665,79 +972,38 @@ public class CoffeeMachineUI {
                 return PaymentResult.cancelled();
             }
 
-            final JDialog wait = new JDialog(frame, "Обработка на картата...", true);
-            JPanel p = new JPanel(new BorderLayout());
-            p.add(new JLabel("Свързване с платежен процесор... Моля изчакайте."), BorderLayout.CENTER);
-            wait.getContentPane().add(p);
-            wait.setSize(350,120);
-            wait.setLocationRelativeTo(frame);
-
-            SwingWorker<Boolean,Void> worker = new SwingWorker<>() {
-                @Override protected Boolean doInBackground() throws Exception {
-                    Thread.sleep(700 + new Random().nextInt(900));
-                    return true; // simulated approval
-                }
-                @Override protected void done() { wait.dispose(); }
-            };
-            worker.execute();
-            wait.setVisible(true);
-
-            try {
-                boolean approved = worker.get();
-                if (approved) {
-                    String last4 = num.substring(num.length()-4);
-                    JOptionPane.showMessageDialog(frame, String.format("Плащането с карта е успешно.\nЦена: %.2f лв.\n(•••• %s)", totalCost, last4), "Плащане успешно", JOptionPane.INFORMATION_MESSAGE);
-                    return new PaymentResult(true, "CARD", totalCost, 0.0, last4, generateTransactionId(), LocalDateTime.now().format(TS_FMT));
-                } else {
-                    JOptionPane.showMessageDialog(frame, "Плащането е отказано.", "Отказ", JOptionPane.ERROR_MESSAGE);
-                    return PaymentResult.cancelled();
-                }
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(frame, "Грешка при обработката: " + ex.getMessage(), "Грешка", JOptionPane.ERROR_MESSAGE);
-                return PaymentResult.cancelled();
-            }
+            // Авторизацията тече във фонов режим; поръчката влиза в опашката, когато банката одобри
+            String last4 = num.substring(num.length()-4);
+            CompletableFuture<PaymentProcessor.Authorization> auth =
+                    payments.authorize(new PaymentProcessor.AuthorizationRequest(txId, totalCost, num, holder));
+            return new PaymentResult(true, "CARD", totalCost, 0.0, last4, txId, timestamp, auth);
         }
     }
 
-    private String generateTransactionId() {
-        String chars = "ABCDEFGHJKMNPQRSTUVWXYZ23456789";
-        StringBuilder sb = new StringBuilder();
-        Random rnd = new Random();
-        for (int i=0;i<10;i++) sb.append(chars.charAt(rnd.nextInt(chars.length())));
-        return sb.toString();
-    }
-
     // ---------------- Orders and receipts ----------------
 
     /**
      * *** ПРОМЕНЕН МЕТОД (за Точка 4) ***
      */
-    private void handleQuickOrder(JList<String> orderList) {
-        List<String> selections = orderList.getSelectedValuesList();
+    private void handleQuickOrder(JList<CoffeeMachineSimulator.Drink> orderList) {
+        List<CoffeeMachineSimulator.Drink> selections = orderList.getSelectedValuesList();
         if (selections.isEmpty()) {
             JOptionPane.showMessageDialog(frame, "Моля, изберете поне една напитка.", "Поръчка", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
         List<String> names = new ArrayList<>();
         double totalCost = 0.0;
-        for (String s : selections) {
-            String name = s.split(" — ")[0].trim();
-            CoffeeMachineSimulator.Drink d = machine.getMenu().get(name);
-            if (d == null) {
-                JOptionPane.showMessageDialog(frame, "Напитката не е намерена: " + name, "Грешка", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-            names.add(name);
+        for (CoffeeMachineSimulator.Drink d : selections) {
+            names.add(d.getName());
             totalCost += d.getPrice();
         }
 
         if (!machine.checkTotalIngredients(names)) {
             JOptionPane.showMessageDialog(frame, "Недостатъчно съставки за поръчката.", "Грешка", JOptionPane.ERROR_MESSAGE);
-            refreshInventoryArea();
             return;
         }
 
-        PaymentResult pay = processPayment(totalCost);
+        PaymentResult pay = processPayment(totalCost, names);
         if (!pay.success) return;
 
         // *** НОВА ПРОМЯНА (за Точка 4) ***
@@ -748,17 +1014,16 @@ public class CoffeeMachineUI {
     /**
      * *** ПРОМЕНЕН МЕТОД (за Точка 4) ***
      */
-    private void handleOrderWithQuantities(JList<String> orderList) {
-        List<String> selections = orderList.getSelectedValuesList();
+    private void handleOrderWithQuantities(JList<CoffeeMachineSimulator.Drink> orderList) {
+        List<CoffeeMachineSimulator.Drink> selections = orderList.getSelectedValuesList();
         if (selections.isEmpty()) {
             JOptionPane.showMessageDialog(frame, "Моля, изберете поне една напитка.", "Поръчка", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
 
-        LinkedHashMap<String,Integer> selectedMap = new LinkedHashMap<>();
-        for (String s : selections) {
-            String name = s.split(" — ")[0].trim();
-            selectedMap.putIfAbsent(name, 1);
+        LinkedHashMap<String,CoffeeMachineSimulator.Drink> selectedMap = new LinkedHashMap<>();
+        for (CoffeeMachineSimulator.Drink d : selections) {
+            selectedMap.putIfAbsent(d.getName(), d);
         }
 
         JPanel panel = new JPanel(new GridBagLayout());
@@ -785,22 +1050,17 @@ public class CoffeeMachineUI {
         for (Map.Entry<String,JSpinner> en : spinnerMap.entrySet()) {
             String name = en.getKey();
             int qty = (Integer) en.getValue().getValue();
-            CoffeeMachineSimulator.Drink d = machine.getMenu().get(name);
-            if (d == null) {
-                JOptionPane.showMessageDialog(frame, "Напитката не е намерена: " + name, "Грешка", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
+            CoffeeMachineSimulator.Drink d = selectedMap.get(name);
             for (int i=0;i<qty;i++) orderedNames.add(name);
             totalCost += d.getPrice() * qty;
         }
 
         if (!machine.checkTotalIngredients(orderedNames)) {
             JOptionPane.showMessageDialog(frame, "Недостатъчно съставки за поръчката.", "Грешка", JOptionPane.ERROR_MESSAGE);
-            refreshInventoryArea();
             return;
         }
 
-        PaymentResult pay = processPayment(totalCost);
+        PaymentResult pay = processPayment(totalCost, orderedNames);
         if (!pay.success) return;
 
         // *** НОВА ПРОМЯНА (за Точка 4) ***
@@ -809,74 +1069,107 @@ public class CoffeeMachineUI {
     }
 
     /**
-     * *** НОВ МЕТОД (за Точка 4) ***
-     * Показва "моля изчакайте" диалог, докато симулира приготвянето на напитките във фонов режим.
-     * След приключване, затваря диалога и показва квитанцията.
+     * Изпраща платената поръчка в опашката за приготвяне и връща веднага, така че UI може да приеме
+     * следващата поръчка. Квитанцията се показва, когато партидата с тази поръчка е приготвена.
      *
      * @param names Списък с имената на всички поръчани напитки (напр. ["Espresso", "Espresso", "Latte"])
      * @param totalCost Обща цена на поръчката
      * @param pay Резултатът от плащането
      */
     private void runPreparationAndReceipt(List<String> names, double totalCost, PaymentResult pay) {
-        
-        // 1. Създаване на диалога "Моля изчакайте"
-        final JDialog waitDialog = new JDialog(frame, "Приготвяне...", true); // true = модален
-        JPanel p = new JPanel(new BorderLayout(10, 10));
-        p.setBorder(new EmptyBorder(20, 20, 20, 20));
-        p.add(new JLabel("☕️... напитките се приготвят... Моля изчакайте."), BorderLayout.CENTER);
-        waitDialog.getContentPane().add(p);
-        waitDialog.setSize(350, 120);
-        waitDialog.setLocationRelativeTo(frame);
-        waitDialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE); // Потребителят не може да го затвори
-        
-        // 2. Създаване на SwingWorker за фоновата работа
-        SwingWorker<Void, Void> worker = new SwingWorker<>() {
-            
-            @Override
-            protected Void doInBackground() throws Exception {
-                // Симулиране на забавяне
-                long delayPerDrink = 500; // 0.5 секунди на напитка
-                long baseDelay = 1000;    // 1 секунда основа
-                long totalDelay = baseDelay + (names.size() * delayPerDrink);
-                
-                Thread.sleep(totalDelay);
-                
-                // Изпълнение на същинската работа (консумация на инвентар)
-                for (String nm : names) {
-                    machine.makeSingleDrink(nm);
+        long started = System.nanoTime();
+        OrderQueue.OrderRequest request = new OrderQueue.OrderRequest(names, totalCost, pay.paidAmount,
+                pay.status, pay.cardLast4, pay.transactionId, pay.timestamp);
+        CompletableFuture<OrderQueue.OrderResult> receipt;
+        if (pay.authorization == null) {
+            receipt = orderQueue.submit(request);
+            statusLabel.setText(String.format("☕️ Приготвяне на %d напитки... (чакащи поръчки: %d)", names.size(), orderQueue.size()));
+        } else {
+            statusLabel.setText(String.format("💳 Авторизация на плащане (•••• %s)...", pay.cardLast4));
+            receipt = pay.authorization.thenCompose(auth -> {
+                if (!auth.isApproved()) throw new PaymentDeclinedException(auth.getDeclineReason());
+                SwingUtilities.invokeLater(() -> statusLabel.setText(String.format(
+                        "☕️ Плащането е одобрено, приготвяне на %d напитки... (чакащи поръчки: %d)", names.size(), orderQueue.size())));
+                return orderQueue.submit(request);
+            });
+        }
+
+        receipt.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            ORDER_TIME.recordSince(started);
+            (error == null && result.isAccepted() ? ORDERS_COMPLETED : ORDERS_FAILED).increment();
+            statusLabel.setText("Готово.");
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                if (cause instanceof PaymentDeclinedException) {
+                    JOptionPane.showMessageDialog(frame, "Плащането с карта е отказано: " + cause.getMessage(), "Отказ", JOptionPane.ERROR_MESSAGE);
+                    return;
                 }
-                return null; // Не връщаме нищо
-            }
-            
-            @Override
-            protected void done() {
-                // Този код се изпълнява на EDT, СЛЕД като doInBackground() приключи
-                waitDialog.dispose(); // Затваряме диалога "Моля изчакайте"
-                
-                try {
-                    get(); // Проверяваме за грешки от фоновия процес
-                    
-                    // Извикваме останалата част от логиката
-                    showReceipt(names, totalCost, pay);
-                    writeTransactionToCsv(pay, names, totalCost);
-                    refreshAllUI();
-                    
-                } catch (Exception e) {
-                    // Ако има грешка при приготвянето
-                    e.printStackTrace(); // Ще се покаже в конзолата
-                    JOptionPane.showMessageDialog(frame, "Възникна грешка при приготвяне: " + e.getMessage(), "Грешка", JOptionPane.ERROR_MESSAGE);
+                if (cause instanceof PaymentProcessor.TransientPaymentException) {
+                    // The outcome is unknown and an approval may still arrive: reverse by transaction id
+                    reverseAuthorization(pay);
+                    JOptionPane.showMessageDialog(frame, cause.getMessage() + "\nНе е известно дали плащането е одобрено, затова то се отменя;"
+                            + " ако сумата бъде блокирана по картата, тя ще бъде освободена. Моля, опитайте отново.", "Грешка", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                JOptionPane.showMessageDialog(frame, "Поръчката не е приета: " + cause.getMessage() + cancelPayment(names, pay),
+                        "Грешка", JOptionPane.ERROR_MESSAGE);
+            } else if (!result.isAccepted()) {
+                JOptionPane.showMessageDialog(frame, "Съставките свършиха преди поръчката да бъде приготвена." + cancelPayment(names, pay),
+                        "Грешка", JOptionPane.ERROR_MESSAGE);
+            } else {
+                ReceiptSpooler.Receipt r = buildReceipt(names, totalCost, pay);
+                receipts.submit(r);
+                if (config.kiosk) {
+                    statusLabel.setText("🧾 Поръчката е готова. Квитанция: " + (r.getTransactionId() != null ? r.getTransactionId() : "-"));
+                } else {
+                    showReceipt(r, pay);
                 }
             }
-        };
-        
-        // 3. Стартиране на worker-а и показване на диалога
-        worker.execute();
-        waitDialog.setVisible(true); // Това ще блокира, докато worker-ът не извика dispose()
+        }));
     }
 
 
-    private void showReceipt(List<String> orderedNames, double totalCost, PaymentResult pay) {
-        String receipt = generateReceiptText(orderedNames, totalCost, pay);
+    /**
+     * Give back the payment of an order that was paid but not made, and record that in the sales log;
+     * returns the line telling the customer.
+     */
+    private String cancelPayment(List<String> names, PaymentResult pay) {
+        if (pay.authorization != null) reverseAuthorization(pay);
+        CompletableFuture.runAsync(() -> {
+            try {
+                ledger.recordReturnedPayment(pay.transactionId, names, pay.paidAmount, pay.status, pay.cardLast4);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                System.out.println("❌ Връщането на плащането по транзакция " + pay.transactionId + " не е записано: " + cause.getMessage());
+            }
+        });
+        if (pay.authorization != null) {
+            return String.format("\nАвторизацията на картата (•••• %s) е отменена, сумата няма да бъде таксувана.", pay.cardLast4);
+        }
+        return String.format("\nСумата от %.2f лв. е върната.", pay.paidAmount);
+    }
+
+    /** Reverse a card authorization in the background; the outcome goes to the console. */
+    private void reverseAuthorization(PaymentResult pay) {
+        payments.reverse(pay.transactionId).whenComplete((ignored, error) -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                System.out.println("❌ Авторизацията по транзакция " + pay.transactionId + " не е отменена: " + cause.getMessage());
+            } else {
+                System.out.println("↩️ Авторизацията по транзакция " + pay.transactionId + " е отменена.");
+            }
+        });
+    }
+
+    /**
+     * Receipt dialog for attended mode. It is modeless, so the next order can be taken while it is open.
+     */
+    private void showReceipt(ReceiptSpooler.Receipt r, PaymentResult pay) {
+        String receipt = receipts.getTemplate().render(r);
 
         JTextArea receiptArea = new JTextArea(receipt);
         receiptArea.setEditable(false);
@@ -897,7 +1190,7 @@ public class CoffeeMachineUI {
         toolBar.addSeparator();
         toolBar.add(closeBtn);
 
-        final JDialog dlg = new JDialog(frame, "Квитанция", true);
+        final JDialog dlg = new JDialog(frame, "Квитанция", false);
         dlg.getContentPane().setLayout(new BorderLayout(8,8));
         dlg.getContentPane().add(toolBar, BorderLayout.NORTH);
 
@@ -925,46 +1218,20 @@ public class CoffeeMachineUI {
         dlg.setVisible(true);
     }
 
-    private String generateReceiptText(List<String> orderedNames, double totalCost, PaymentResult pay) {
-        StringBuilder sb = new StringBuilder();
-        String now = (pay != null && pay.timestamp != null) ? pay.timestamp : LocalDateTime.now().format(TS_FMT);
-        sb.append("====== Coffee Machine Receipt ======\n");
-        sb.append("Търговец: ЕТ КРУМ КРУМОВ\n");
-        sb.append("Адрес: ул. Стефан Сливков 7, град Стара Загора\n");
-        sb.append("Тел: +359 2 123 456\n");
-        sb.append(String.format("Дата/час: %s\n", now));
-        sb.append(String.format("Транзакция ID: %s\n", pay != null && pay.transactionId != null ? pay.transactionId : "-"));
-        sb.append("------------------------------------\n");
-
+    /** Receipt data of a prepared order; the text is rendered from the spooler's template. */
+    private ReceiptSpooler.Receipt buildReceipt(List<String> orderedNames, double totalCost, PaymentResult pay) {
         Map<String,Integer> counts = new LinkedHashMap<>();
         for (String n : orderedNames) counts.put(n, counts.getOrDefault(n, 0) + 1);
 
+        Map<String, CoffeeMachineSimulator.Drink> menu = machine.getMenuSnapshot();
+        List<ReceiptSpooler.Line> lines = new ArrayList<>(counts.size());
         for (Map.Entry<String,Integer> e : counts.entrySet()) {
-            String name = e.getKey();
-            int qty = e.getValue();
-            CoffeeMachineSimulator.Drink d = machine.getMenu().get(name);
+            CoffeeMachineSimulator.Drink d = menu.get(e.getKey());
             double price = (d != null) ? d.getPrice() : 0.0;
-            sb.append(String.format("%-20s x%2d  %6.2f лв.\n", name, qty, price * qty));
+            lines.add(new ReceiptSpooler.Line(e.getKey(), e.getValue(), price * e.getValue()));
         }
-
-        sb.append("------------------------------------\n");
-        sb.append(String.format("Обща цена:           %8.2f лв.\n", totalCost));
-
-        if (pay != null) {
-            String methodLabel = "Неизвестен";
-            String symbol = "";
-            if ("CASH".equals(pay.status)) { methodLabel = "В брой (Cash)"; symbol = "💵"; }
-            else if ("CARD".equals(pay.status)) { methodLabel = "С карта (Card)"; symbol = "💳"; }
-            sb.append(String.format("Платено (%s):       %8.2f лв.\n", methodLabel + " " + symbol, pay.paidAmount));
-            sb.append(String.format("Ресто:               %8.2f лв.\n", pay.change));
-            if (pay.cardLast4 != null) sb.append(String.format("Детайли карта:      ▪▪▪▪ %s\n", pay.cardLast4));
-        }
-
-        sb.append("------------------------------------\n");
-        sb.append("Благодарим Ви! Посетете ни пак.\n");
-        sb.append("====================================\n");
-
-        return sb.toString();
+        return new ReceiptSpooler.Receipt(pay.timestamp, pay.transactionId, lines, totalCost,
+                pay.paidAmount, pay.change, pay.status, pay.cardLast4);
     }
 
     private void saveReceiptToFile(String receiptText, Component parent) {
@@ -974,12 +1241,21 @@ public class CoffeeMachineUI {
         int res = chooser.showSaveDialog(parent);
         if (res != JFileChooser.APPROVE_OPTION) return;
         File f = chooser.getSelectedFile();
-        try (FileWriter fw = new FileWriter(f)) {
-            fw.write(receiptText);
-            JOptionPane.showMessageDialog(parent, "Квитанцията е записана: " + f.getAbsolutePath(), "Запазено", JOptionPane.INFORMATION_MESSAGE);
-        } catch (IOException ex) {
-            JOptionPane.showMessageDialog(parent, "Грешка при запис: " + ex.getMessage(), "Грешка", JOptionPane.ERROR_MESSAGE);
-        }
+        // The write happens off the EDT; only the result message comes back to it
+        CompletableFuture.runAsync(() -> {
+            try {
+                Files.writeString(f.toPath(), receiptText, StandardCharsets.UTF_8);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }).whenComplete((ignored, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                JOptionPane.showMessageDialog(parent, "Грешка при запис: " + cause.getMessage(), "Грешка", JOptionPane.ERROR_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(parent, "Квитанцията е записана: " + f.getAbsolutePath(), "Запазено", JOptionPane.INFORMATION_MESSAGE);
+            }
+        }));
     }
 
     private void sendReceiptByEmail(String receiptText, PaymentResult pay) {
@@ -1004,14 +1280,14 @@ public class CoffeeMachineUI {
      */
     private void refreshInventoryArea() {
         StringBuilder sb = new StringBuilder();
-        Map<String,Integer> inv = machine.getInventory();
-        Map<String,Double> costs = machine.getIngredientCosts();
+        // A copy: the brewing and HTTP threads change the inventory while the EDT reads it
+        Map<String,Integer> inv = machine.getInventorySnapshot();
         List<String> keys = new ArrayList<>(inv.keySet());
         Collections.sort(keys);
         
         for (String k : keys) {
             int qty = inv.get(k);
-            double cost = costs.getOrDefault(k, 0.0);
+            double cost = machine.getIngredientCost(k);
             sb.append(String.format("%-25s : %6d (Цена/единица: %.4f)", k, qty, cost));
             
             // *** НОВА ПРОВЕРКА ***
@@ -1030,152 +1306,138 @@ public class CoffeeMachineUI {
         }
     }
 
+    /**
+     * Re-read the sales log into the table. Only rows appended since the last refresh are indexed;
+     * the query runs in the background.
+     */
     private void refreshSalesArea() {
-        StringBuilder sb = new StringBuilder();
-        File csv = new File("sales_log.csv");
-        if (csv.exists()) {
-            try (BufferedReader br = new BufferedReader(new FileReader(csv))) {
-                String line;
-                boolean first = true;
-                List<String> lines = new ArrayList<>();
-                while ((line = br.readLine()) != null) {
-                    if (first) { first = false; continue; }
-                    if (line.trim().isEmpty()) continue;
-                    String[] parts = line.split(",", 5);
-                    if (parts.length >= 5) {
-                        String ts = parts[0];
-                        String drink = parts[1];
-                        String price = parts[2];
-                        String profit = parts[4];
-                        lines.add(String.format("[%s] %s (Цена: %s лв., Печалба: %s лв.)", ts, drink, price, profit));
-                    } else {
-                        lines.add(line);
-                    }
-                }
-                for (int i = lines.size() - 1; i >= 0; i--) sb.append(lines.get(i)).append("\n");
-            } catch (IOException ex) {
-                sb.append("Грешка при четене на sales_log.csv: ").append(ex.getMessage()).append("\n");
-            }
-        } else {
-            List<CoffeeMachineSimulator.SaleLog> sales = machine.getSalesHistory();
-            if (sales == null || sales.isEmpty()) {
-                sb.append("Няма регистрирани продажби.\n");
-            } else {
-                for (int i = sales.size() - 1; i >= 0; i--) {
-                    sb.append(sales.get(i).toString()).append("\n");
-                }
-            }
-        }
-        if (salesText != null) {
-             salesText.setText(sb.toString());
-             salesText.setCaretPosition(0);
-        }
+        if (salesModel != null) salesModel.reload();
     }
 
-    private void writeTransactionToCsv(PaymentResult pay, List<String> items, double totalCost) {
-        if (pay == null || !pay.success) return;
-        File f = new File("sales_log.csv");
-        boolean exists = f.exists();
-        double totalIngredientCost = 0.0;
-        Map<String, Double> unitCosts = machine.getIngredientCosts();
-        for (String name : items) {
-            CoffeeMachineSimulator.Drink d = machine.getMenu().get(name);
-            if (d == null) continue;
-            for (Map.Entry<String, Integer> en : d.getIngredients().entrySet()) {
-                totalIngredientCost += unitCosts.getOrDefault(en.getKey(), 0.0) * en.getValue();
-            }
+    private void applySalesFilter(String fromText, String toText) {
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = fromText.trim().isEmpty() ? null : LocalDate.parse(fromText.trim());
+            to = toText.trim().isEmpty() ? null : LocalDate.parse(toText.trim());
+        } catch (DateTimeParseException ex) {
+            JOptionPane.showMessageDialog(frame, "Невалидна дата: използвайте формат гггг-мм-дд.", "Филтър", JOptionPane.ERROR_MESSAGE);
+            return;
         }
-        double profit = totalCost - totalIngredientCost;
+        String drink = (String) salesDrinkFilter.getSelectedItem();
+        String method = (String) salesMethodFilter.getSelectedItem();
+        salesModel.setFilter(new SalesLogIndex.Filter(from, to,
+                SALES_FILTER_ALL.equals(drink) ? null : drink, SALES_FILTER_ALL.equals(method) ? null : method));
+    }
 
-        try (FileWriter fw = new FileWriter(f, true)) {
-            if (!exists) {
-                fw.write("timestamp,txid,items,total,paid,change,method,cardLast4,profit\n");
-            }
-            String ts = LocalDateTime.now().format(TS_FMT);
-            String tx = pay.transactionId != null ? pay.transactionId : "-";
-            String joined = String.join(";", items).replace(",", " ").replace("\n", " ");
-            String method = pay.status != null ? pay.status : "";
-            String paid = PRICE_FMT.format(pay.paidAmount);
-            String change = PRICE_FMT.format(pay.change);
-            String total = PRICE_FMT.format(totalCost);
-            String prof = PRICE_FMT.format(profit);
-            String card4 = pay.cardLast4 != null ? pay.cardLast4 : "";
-            fw.write(String.format("%s,%s,%s,%s,%s,%s,%s,%s,%s\n", ts, tx, joined, total, paid, change, method, card4, prof));
-        } catch (IOException ex) {
-            System.err.println("Failed to write transaction CSV: " + ex.getMessage());
+    /** Summary line, sort arrows and filter choices after the table got a new view. */
+    private void updateSalesSummary() {
+        SalesLogIndex.View view = salesModel.getView();
+        salesSummaryLabel.setText(view.size() == 0 ? "Няма регистрирани продажби."
+                : String.format("%d транзакции, оборот %.2f лв., печалба %.2f лв.", view.size(), view.getTotal(), view.getProfit()));
+        for (int c = 0; c < salesTable.getColumnCount(); c++) {
+            int modelColumn = salesTable.convertColumnIndexToModel(c);
+            String name = SalesTableModel.COLUMNS[modelColumn];
+            if (SalesTableModel.sortKeyOf(modelColumn) == salesModel.getSortKey()) name += salesModel.isDescending() ? " ▼" : " ▲";
+            salesTable.getColumnModel().getColumn(c).setHeaderValue(name);
         }
+        salesTable.getTableHeader().repaint();
+        syncFilterChoices(salesDrinkFilter, view.getDrinks());
+        syncFilterChoices(salesMethodFilter, view.getMethods());
+    }
+
+    private static void syncFilterChoices(JComboBox<String> combo, List<String> values) {
+        if (combo.getItemCount() == values.size() + 1) return;
+        Object selected = combo.getSelectedItem();
+        combo.removeAllItems();
+        combo.addItem(SALES_FILTER_ALL);
+        for (String v : values) combo.addItem(v);
+        combo.setSelectedItem(selected);
     }
 
     // ---------------- Menu image management ----------------
 
     private void updateDisplayedImageForSelectedMenuItem() {
-        String selected = null;
+        CoffeeMachineSimulator.Drink selected = null;
+        JList<CoffeeMachineSimulator.Drink> activeList = null;
 
         try {
-            if (leftTabs != null && leftTabs.getSelectedIndex() == 1) { 
-                selected = orderList.getSelectedValue(); 
-            } else {
-                selected = menuList.getSelectedValue();
-            }
+            activeList = leftTabs != null && leftTabs.getSelectedIndex() == 1 ? orderList : menuList;
+            selected = activeList.getSelectedValue();
         } catch (Exception ex) {
             System.err.println("Error reading list selection: " + ex.getMessage());
         }
 
         if (selected == null) {
+            shownImagePath = null;
             imageLabel.setIcon(null);
             imageLabel.setText("Няма избрана напитка");
             return;
         }
         
-        String name = selected.split(" — ")[0].trim();
+        String name = selected.getName();
         String path = machine.getDrinkImage(name);
         
         if (path == null || path.trim().isEmpty()) {
+            shownImagePath = null;
             imageLabel.setIcon(null);
             imageLabel.setText("<Няма изображение за " + name + ">");
         } else {
             setImageToLabelFromPath(path);
             imageLabel.setToolTipText(path);
         }
+        prefetchNeighbourImages(activeList);
     }
 
 
+    /**
+     * Show the image at this path, scaled to the label. A cached image is shown at once; otherwise a
+     * placeholder is shown while the image is decoded in the background.
+     */
     private void setImageToLabelFromPath(String path) {
         File f = new File(path);
         if (!f.exists()) {
+            shownImagePath = null;
             imageLabel.setIcon(null);
             imageLabel.setText("<Файлът не е намерен>");
             return;
         }
-        String low = path.toLowerCase(Locale.ROOT);
-        try {
-            if (low.endsWith(".gif")) {
-                ImageIcon icon = new ImageIcon(path);
+        Dimension size = imageLabel.getPreferredSize();
+        shownImagePath = path;
+        ImageIcon cached = imageCache.getIfPresent(path, size.width, size.height);
+        if (cached != null) {
+            imageLabel.setIcon(cached);
+            imageLabel.setText(null);
+            return;
+        }
+        imageLabel.setIcon(null);
+        imageLabel.setText("Зареждане...");
+        imageCache.load(path, size.width, size.height).whenComplete((icon, error) -> SwingUtilities.invokeLater(() -> {
+            if (!path.equals(shownImagePath)) return; // selection moved on meanwhile
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                imageLabel.setIcon(null);
+                imageLabel.setText("<Грешка: " + cause.getMessage() + ">");
+            } else if (icon == null) {
+                imageLabel.setIcon(null);
+                imageLabel.setText("<Грешка при зареждане>");
+            } else {
                 imageLabel.setIcon(icon);
                 imageLabel.setText(null);
-                return;
             }
+        }));
+    }
 
-            BufferedImage img = ImageIO.read(f);
-            if (img == null) {
-                imageLabel.setIcon(null);
-                imageLabel.setText("<Грешка при зареждане>");
-                return;
-            }
-            Dimension size = imageLabel.getPreferredSize();
-            int targetW = size.width;
-            int targetH = size.height;
-            double imgW = img.getWidth();
-            double imgH = img.getHeight();
-            double scale = Math.min((double) targetW / imgW, (double) targetH / imgH);
-            int newW = Math.max(1, (int) (imgW * scale));
-            int newH = Math.max(1, (int) (imgH * scale));
-            Image scaled = img.getScaledInstance(newW, newH, Image.SCALE_SMOOTH);
-            imageLabel.setIcon(new ImageIcon(scaled));
-            imageLabel.setText(null);
-        } catch (IOException ex) {
-            imageLabel.setIcon(null);
-            imageLabel.setText("<Грешка: " + ex.getMessage() + ">");
+    /** Warm the image cache for the items just above and below the selection. */
+    private void prefetchNeighbourImages(JList<CoffeeMachineSimulator.Drink> list) {
+        int index = list.getSelectedIndex();
+        if (index < 0) return;
+        Dimension size = imageLabel.getPreferredSize();
+        ListModel<CoffeeMachineSimulator.Drink> model = list.getModel();
+        for (int i = index - IMAGE_PREFETCH_DISTANCE; i <= index + IMAGE_PREFETCH_DISTANCE; i++) {
+            if (i == index || i < 0 || i >= model.getSize()) continue;
+            String path = machine.getDrinkImage(model.getElementAt(i).getName());
+            imageCache.prefetch(path, size.width, size.height);
         }
     }
 
@@ -1185,7 +1447,7 @@ public class CoffeeMachineUI {
             return;
         }
         
-        List<String> selected = menuList.getSelectedValuesList(); 
+        List<CoffeeMachineSimulator.Drink> selected = menuList.getSelectedValuesList(); 
         if (selected.isEmpty()) {
              if (orderList.getSelectedValue() != null) {
                  selected = orderList.getSelectedValuesList();
@@ -1200,23 +1462,22 @@ public class CoffeeMachineUI {
         if (result != JFileChooser.APPROVE_OPTION) return;
         File chosen = chooser.getSelectedFile();
         try {
-            BufferedImage img = ImageIO.read(chosen);
-            if (img == null) { JOptionPane.showMessageDialog(frame, "Файлът не е изображение.", "Грешка", JOptionPane.ERROR_MESSAGE); return; }
+            if (ThumbnailStore.probe(chosen) == null) { JOptionPane.showMessageDialog(frame, "Файлът не е изображение.", "Грешка", JOptionPane.ERROR_MESSAGE); return; }
             if (selected.size() > 1) {
                 int applyAll = JOptionPane.showConfirmDialog(frame, "Прикачване към всички избрани напитки?", "Потвърждение", JOptionPane.YES_NO_CANCEL_OPTION);
                 if (applyAll == JOptionPane.CANCEL_OPTION || applyAll == JOptionPane.CLOSED_OPTION) return;
                 if (applyAll == JOptionPane.YES_OPTION) {
-                    for (String s : selected) machine.setDrinkImage(s.split(" — ")[0].trim(), chosen.getAbsolutePath());
+                    for (CoffeeMachineSimulator.Drink d : selected) machine.setDrinkImage(d.getName(), chosen.getAbsolutePath());
                     setImageToLabelFromPath(chosen.getAbsolutePath());
                     JOptionPane.showMessageDialog(frame, "Изображението е прикачено.", "Успех", JOptionPane.INFORMATION_MESSAGE);
                 } else {
-                    String name = selected.get(0).split(" — ")[0].trim();
+                    String name = selected.get(0).getName();
                     machine.setDrinkImage(name, chosen.getAbsolutePath());
                     setImageToLabelFromPath(chosen.getAbsolutePath());
                     JOptionPane.showMessageDialog(frame, "Изображението е прикачено към " + name + ".", "Успех", JOptionPane.INFORMATION_MESSAGE);
                 }
             } else {
-                String name = selected.get(0).split(" — ")[0].trim();
+                String name = selected.get(0).getName();
                 machine.setDrinkImage(name, chosen.getAbsolutePath());
                 setImageToLabelFromPath(chosen.getAbsolutePath());
                 JOptionPane.showMessageDialog(frame, "Изображението е прикачено към " + name + ".", "Успех", JOptionPane.INFORMATION_MESSAGE);
@@ -1224,7 +1485,6 @@ public class CoffeeMachineUI {
         } catch (IOException ex) {
             JOptionPane.showMessageDialog(frame, "Грешка при зареждане: " + ex.getMessage(), "Грешка", JOptionPane.ERROR_MESSAGE);
         }
-        refreshAllUI();
     }
 
     private void removeImageForSelectedDrink() {
@@ -1233,7 +1493,7 @@ public class CoffeeMachineUI {
             return;
         }
         
-        List<String> selected = menuList.getSelectedValuesList();
+        List<CoffeeMachineSimulator.Drink> selected = menuList.getSelectedValuesList();
         if (selected.isEmpty()) {
              if (orderList.getSelectedValue() != null) {
                  selected = orderList.getSelectedValuesList();
@@ -1246,16 +1506,13 @@ public class CoffeeMachineUI {
         if (selected.size() > 1) {
             int ans = JOptionPane.showConfirmDialog(frame, "Премахване на изображенията за всички избрани напитки?", "Потвърждение", JOptionPane.YES_NO_OPTION);
             if (ans != JOptionPane.YES_OPTION) return;
-            for (String s : selected) machine.setDrinkImage(s.split(" — ")[0].trim(), null);
-            updateDisplayedImageForSelectedMenuItem();
+            for (CoffeeMachineSimulator.Drink d : selected) machine.setDrinkImage(d.getName(), null);
             JOptionPane.showMessageDialog(frame, "Изображенията са премахнати.", "Успех", JOptionPane.INFORMATION_MESSAGE);
         } else {
-            String name = selected.get(0).split(" — ")[0].trim();
+            String name = selected.get(0).getName();
             machine.setDrinkImage(name, null);
-            updateDisplayedImageForSelectedMenuItem();
             JOptionPane.showMessageDialog(frame, "Изображението за " + name + " е премахнато.", "Успех", JOptionPane.INFORMATION_MESSAGE);
         }
-        refreshAllUI();
     }
 
     // ---------------- Admin utilities ----------------
@@ -1375,7 +1632,6 @@ public class CoffeeMachineUI {
 
             machine.addDrink(name, price, ingredients);
             JOptionPane.showMessageDialog(frame, "Напитката е добавена (ако всички съставки са познати).", "Успех", JOptionPane.INFORMATION_MESSAGE);
-            refreshAllUI();
         }
     }
 
@@ -1389,19 +1645,13 @@ public class CoffeeMachineUI {
             return; 
         }
         
-        String selected = menuList.getSelectedValue();
-        if (selected == null) {
+        CoffeeMachineSimulator.Drink drinkToEdit = menuList.getSelectedValue();
+        if (drinkToEdit == null) {
             JOptionPane.showMessageDialog(frame, "Моля, изберете напитка от менюто за редактиране.", "Инфо", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
         
-        String originalName = selected.split(" — ")[0].trim();
-        CoffeeMachineSimulator.Drink drinkToEdit = machine.getMenu().get(originalName);
-
-        if (drinkToEdit == null) {
-             JOptionPane.showMessageDialog(frame, "Грешка: Напитката '" + originalName + "' не беше намерена.", "Грешка", JOptionPane.ERROR_MESSAGE);
-             return;
-        }
+        String originalName = drinkToEdit.getName();
 
         // Извикваме новия диалог в режим "Редактиране"
         Map<String, Object> result = showDrinkEditorDialog("Редактирай напитка: " + originalName, drinkToEdit);
@@ -1411,31 +1661,27 @@ public class CoffeeMachineUI {
             double newPrice = (Double) result.get("price");
             Map<String, Integer> newIngredients = (Map<String, Integer>) result.get("ingredients");
 
-            // Симулиране на "update" чрез delete + add
-            machine.deleteDrink(originalName);
-            machine.addDrink(newName, newPrice, newIngredients);
+            machine.editDrink(originalName, newName, newPrice, newIngredients);
 
             JOptionPane.showMessageDialog(frame, "Напитката '" + originalName + "' беше успешно редактирана.", "Успех", JOptionPane.INFORMATION_MESSAGE);
-            refreshAllUI();
         }
     }
 
 
     private void handleDeleteSelectedDrink() {
         if (!isAdmin) { JOptionPane.showMessageDialog(frame, "Тази операция е достъпна само за администратор.", "Достъп", JOptionPane.ERROR_MESSAGE); return; }
-        String selected = menuList.getSelectedValue();
+        CoffeeMachineSimulator.Drink selected = menuList.getSelectedValue();
         if (selected == null) { JOptionPane.showMessageDialog(frame, "Моля, изберете напитка от менюто за изтриване.", "Инфо", JOptionPane.INFORMATION_MESSAGE); return; }
-        String name = selected.split(" — ")[0].trim();
+        String name = selected.getName();
         int ans = JOptionPane.showConfirmDialog(frame, "Сигурни ли сте, че искате да изтриете: " + name + " ?", "Потвърждение", JOptionPane.YES_NO_OPTION);
         if (ans == JOptionPane.YES_OPTION) {
             machine.deleteDrink(name);
-            refreshAllUI();
         }
     }
 
     private void handleRefillDialog() {
         if (!isAdmin) { JOptionPane.showMessageDialog(frame, "Тази операция е достъпна само за администратор.", "Достъп", JOptionPane.ERROR_MESSAGE); return; }
-        Map<String, Integer> inv = machine.getInventory();
+        Map<String, Integer> inv = machine.getInventorySnapshot();
         List<String> ingredients = new ArrayList<>(inv.keySet());
         Collections.sort(ingredients);
         String choice = (String) JOptionPane.showInputDialog(frame, "Изберете съставка:", "Зареждане", JOptionPane.PLAIN_MESSAGE, null, ingredients.toArray(), ingredients.get(0));
@@ -1452,96 +1698,209 @@ public class CoffeeMachineUI {
 
         machine.refillInventory(choice, amount);
         JOptionPane.showMessageDialog(frame, String.format("Добавени %d на %s.", amount, choice), "Успех", JOptionPane.INFORMATION_MESSAGE);
-        refreshAllUI();
     }
 
     private void handleCollectCash() {
         if (!isAdmin) { JOptionPane.showMessageDialog(frame, "Тази операция е достъпна само за администратор.", "Достъп", JOptionPane.ERROR_MESSAGE); return; }
         double collected = machine.collectCash();
         JOptionPane.showMessageDialog(frame, String.format("Изтеглени %.2f лв. от касата.", collected), "Каса", JOptionPane.INFORMATION_MESSAGE);
-        refreshAllUI();
     }
 
-    // ---------------- Utilities ----------------
-
-    private void redirectSystemStreamsToConsole(JTextArea ta) {
-        PrintStream ps = new PrintStream(new TextAreaOutputStream(ta), true);
-        System.setOut(ps);
-        System.setErr(ps);
-    }
-
-    private static class TextAreaOutputStream extends OutputStream {
-        private final JTextArea textArea;
-        private final StringBuilder buffer = new StringBuilder();
-
-        public TextAreaOutputStream(JTextArea ta) {
-            this.textArea = ta;
+    /**
+     * Намира транзакция по ID от квитанцията (през индекса на sales_log.csv) и по избор я възстановява.
+     */
+    private void handleTransactionLookup() {
+        if (!isAdmin) { JOptionPane.showMessageDialog(frame, "Тази операция е достъпна само за администратор.", "Достъп", JOptionPane.ERROR_MESSAGE); return; }
+        String txid = JOptionPane.showInputDialog(frame, "Транзакция ID (от квитанцията):", "Търсене на транзакция", JOptionPane.QUESTION_MESSAGE);
+        if (txid == null || txid.trim().isEmpty()) return;
+        SalesCsvLog.Row row = ledger.lookup(txid);
+        if (row == null) {
+            JOptionPane.showMessageDialog(frame, "Няма транзакция с ID " + txid.trim() + ".", "Търсене", JOptionPane.INFORMATION_MESSAGE);
+            return;
         }
-
-        @Override public synchronized void write(int b) {
-            buffer.append((char) b);
-            if (b == '\n') flushBufferToTextArea();
+        String refundedBy = ledger.findRefund(txid);
+        String details = String.format("Транзакция: %s\nДата: %s\nНапитки: %s\nСума: %.2f лв.\nПлащане: %s%s\nПечалба: %.2f лв.",
+                row.getTransactionId(), row.getTimestamp(), String.join(", ", row.getItems()), row.getTotal(),
+                row.getMethod() != null ? row.getMethod() : "-", row.getCardLast4() != null ? " (•••• " + row.getCardLast4() + ")" : "",
+                row.getProfit());
+        if (refundedBy != null || row.getRefundOf() != null || row.isReturnedPayment() || ledger.isRefunded(txid)) {
+            String note = refundedBy != null ? "\n\nВъзстановена с транзакция " + refundedBy + "."
+                    : row.isReturnedPayment() ? "\n\nПоръчката не е приготвена; плащането е върнато."
+                    : row.getRefundOf() == null ? "\n\nВъзстановена." : "";
+            JOptionPane.showMessageDialog(frame, details + note, "Транзакция", JOptionPane.INFORMATION_MESSAGE);
+            return;
         }
-
-        @Override public synchronized void write(byte[] b, int off, int len) {
-            buffer.append(new String(b, off, len));
-            if (buffer.indexOf("\n") >= 0) flushBufferToTextArea();
+        int res = JOptionPane.showConfirmDialog(frame, details + "\n\nДа бъде ли възстановена сумата?", "Транзакция", JOptionPane.YES_NO_OPTION);
+        if (res != JOptionPane.YES_OPTION) return;
+        try {
+            SalesCsvLog.Row refund = ledger.refund(txid);
+            JOptionPane.showMessageDialog(frame, String.format("Възстановени %.2f лв.\nТранзакция за възстановяване: %s", -refund.getTotal(), refund.getTransactionId()),
+                    "Възстановяване", JOptionPane.INFORMATION_MESSAGE);
+        } catch (IllegalArgumentException | IllegalStateException ex) {
+            JOptionPane.showMessageDialog(frame, ex.getMessage(), "Грешка", JOptionPane.ERROR_MESSAGE);
         }
+    }
 
-        @Override public synchronized void flush() {
-            if (buffer.length() > 0) flushBufferToTextArea();
-        }
+    /**
+     * Merge another sales_log.csv into ours, skipping transactions we already have. Runs off the EDT.
+     */
+    private void handleSalesImport() {
+        if (!isAdmin) { JOptionPane.showMessageDialog(frame, "Тази операция е достъпна само за администратор.", "Достъп", JOptionPane.ERROR_MESSAGE); return; }
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Импортирай транзакции от CSV");
+        if (chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) return;
+        File input = chooser.getSelectedFile();
+        adminImportBtn.setEnabled(false);
+        CompletableFuture.supplyAsync(() -> {
+            try (SalesLogMerger merger = SalesLogMerger.forFiles(salesCsv, List.of(input))) {
+                return merger.importFile(input);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }).whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            adminImportBtn.setEnabled(isAdmin);
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                JOptionPane.showMessageDialog(frame, "Грешка при импортиране: " + cause.getMessage(), "Грешка", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            JOptionPane.showMessageDialog(frame, "Импорт от " + input.getName() + ":\n" + result, "Импорт", JOptionPane.INFORMATION_MESSAGE);
+        }));
+    }
 
-        private void flushBufferToTextArea() {
-            final String text = buffer.toString();
-            buffer.setLength(0);
-            SwingUtilities.invokeLater(() -> {
-                textArea.append(text);
-                textArea.setCaretPosition(textArea.getDocument().getLength());
-            });
-        }
+    // ---------------- Utilities ----------------
+
+    private void redirectSystemStreamsToConsole(JTextArea ta) {
+        consoleSink = new ConsoleSink(ta, CONSOLE_MAX_LINES, CONSOLE_FRAME_MS);
+        PrintStream ps = new PrintStream(consoleSink, true, StandardCharsets.UTF_8);
+        System.setOut(ps);
+        System.setErr(ps);
     }
 
     // ---------------- BackgroundPanel ----------------
 
+    /**
+     * Panel with a semi-transparent "cover" background image.
+     *
+     * The scaled and alpha-blended background is rendered once per panel size into an opaque,
+     * screen-compatible image, so a repaint is a single blit. It is re-rendered off the EDT only when
+     * the image or the size changes; while the window is being resized the previous rendering is
+     * stretched until the size has been stable for a moment.
+     */
     private static class BackgroundPanel extends JPanel {
+        private static final int RESIZE_DEBOUNCE_MS = 150;
+
         private BufferedImage bg;
         private float alpha = 0.25f;
+        private BufferedImage rendered; // bg blended over the panel colour at renderedSize
+        private Dimension renderedSize;
+        private boolean renderPending;
+        private int generation; // bumped on every change; older renders are discarded
+        private final javax.swing.Timer debounce;
 
         public BackgroundPanel() {
             setOpaque(true);
+            debounce = new javax.swing.Timer(RESIZE_DEBOUNCE_MS, e -> render());
+            debounce.setRepeats(false);
+            addComponentListener(new java.awt.event.ComponentAdapter() {
+                @Override
+                public void componentResized(java.awt.event.ComponentEvent e) {
+                    if (bg != null) debounce.restart();
+                }
+            });
         }
 
         public void setBackgroundImage(BufferedImage image, float alpha) {
             this.bg = image;
             this.alpha = Math.max(0f, Math.min(1f, alpha));
+            generation++;
+            rendered = null;
+            renderedSize = null;
+            if (image != null) render();
             repaint();
         }
 
+        @Override
+        public void setBackground(Color bg) {
+            super.setBackground(bg);
+            if (this.bg != null) setBackgroundImage(this.bg, alpha); // the colour is baked into the rendering
+        }
+
         @Override
         protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            if (bg != null) {
-                Graphics2D g2 = (Graphics2D) g.create();
-                int w = getWidth();
-                int h = getHeight();
-                double imgW = bg.getWidth();
-                double imgH = bg.getHeight();
-                double scale = Math.max((double) w / imgW, (double) h / imgH); // cover
-                int newW = (int) (imgW * scale);
-                int newH = (int) (imgH * scale);
-                int x = (w - newW) / 2;
-                int y = (h - newH) / 2;
-                g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
-                g2.drawImage(bg, x, y, newW, newH, null);
-                g2.dispose();
+            BufferedImage img = rendered;
+            if (bg == null || img == null) {
+                super.paintComponent(g);
+                if (bg != null && !renderPending) debounce.restart();
+                return;
+            }
+            int w = getWidth();
+            int h = getHeight();
+            if (w == renderedSize.width && h == renderedSize.height) {
+                g.drawImage(img, 0, 0, null);
+            } else {
+                // Interim frame while resizing: stretch the last rendering, re-render when settled
+                g.drawImage(img, 0, 0, w, h, null);
+                if (!renderPending) debounce.restart();
             }
         }
+
+        /** Render the background for the current size on a worker thread. Called on the EDT. */
+        private void render() {
+            int w = getWidth();
+            int h = getHeight();
+            if (bg == null || w <= 0 || h <= 0) return;
+            if (rendered != null && renderedSize.width == w && renderedSize.height == h) return;
+            BufferedImage source = bg;
+            float a = alpha;
+            Color base = getBackground();
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            int gen = generation;
+            renderPending = true;
+            CompletableFuture.supplyAsync(() -> renderCover(source, a, base, gc, w, h))
+                    .whenComplete((img, error) -> SwingUtilities.invokeLater(() -> {
+                        if (gen != generation) return;
+                        renderPending = false;
+                        if (error != null) {
+                            System.err.println("Background render failed: " + error.getMessage());
+                            return;
+                        }
+                        rendered = img;
+                        renderedSize = new Dimension(w, h);
+                        repaint();
+                    }));
+        }
+
+        private static BufferedImage renderCover(BufferedImage src, float alpha, Color base, GraphicsConfiguration gc, int w, int h) {
+            BufferedImage out = gc != null
+                    ? gc.createCompatibleImage(w, h, Transparency.OPAQUE)
+                    : new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            double scale = Math.max((double) w / src.getWidth(), (double) h / src.getHeight()); // cover
+            int newW = Math.max(1, (int) Math.ceil(src.getWidth() * scale));
+            int newH = Math.max(1, (int) Math.ceil(src.getHeight() * scale));
+            BufferedImage scaled = DrinkImageCache.scale(src, newW, newH);
+            Graphics2D g2 = out.createGraphics();
+            g2.setColor(base);
+            g2.fillRect(0, 0, w, h);
+            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
+            g2.drawImage(scaled, (w - newW) / 2, (h - newH) / 2, null);
+            g2.dispose();
+            return out;
+        }
     }
 
     // ---------------- Main ----------------
 
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> new CoffeeMachineUI());
+        long launchNanos = System.nanoTime();
+        Config config;
+        try {
+            config = Config.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println("❌ " + e.getMessage());
+            System.out.println("Употреба: java CoffeeMachineUI [--kiosk] [--print]");
+            return;
+        }
+        SwingUtilities.invokeLater(() -> new CoffeeMachineUI(config, launchNanos));
     }
 }
\ No newline at end of file
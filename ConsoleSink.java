@@ -0,0 +1,184 @@
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * OutputStream that shows what is printed in a JTextArea, for System.out/err in the Swing UI.
+ *
+ * Bytes are decoded as UTF-8, keeping a multi-byte character split across writes intact. Complete
+ * lines go into a ring buffer of at most {@code maxLines}; the text area is updated from it at most
+ * once per frame interval, appending only what arrived since the last update and trimming the oldest
+ * lines, so its document never grows past the cap and a burst of output costs one EDT update.
+ * An unfinished line (a prompt printed without a newline) is shown too and replaced once it grows.
+ * While the console is not shown, output only goes into the ring buffer.
+ */
+public class ConsoleSink extends OutputStream {
+
+    private final JTextArea textArea;
+    private final int maxLines;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer undecoded = ByteBuffer.allocate(16); // tail of an incomplete sequence
+    private final CharBuffer decoded = CharBuffer.allocate(8192);
+
+    // Guarded by this
+    private final String[] ring;
+    private int ringStart;
+    private int ringSize;
+    private final StringBuilder partial = new StringBuilder();
+    private final List<String> fresh = new ArrayList<>(); // lines not yet in the text area
+    private boolean overflowed; // more than maxLines arrived since the last update: rebuild
+    private boolean scheduled;
+    private boolean shown = true;
+
+    // EDT only
+    private final Timer timer;
+    private int shownPartialLength; // chars of the unfinished line at the end of the document
+
+    /**
+     * @param maxLines        lines kept in the text area
+     * @param frameIntervalMs minimum time between two text area updates
+     */
+    public ConsoleSink(JTextArea textArea, int maxLines, int frameIntervalMs) {
+        this.textArea = textArea;
+        this.maxLines = Math.max(1, maxLines);
+        this.ring = new String[this.maxLines];
+        this.timer = new Timer(frameIntervalMs, e -> update());
+        this.timer.setRepeats(false);
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        ByteBuffer in = ByteBuffer.wrap(b, off, len);
+        while (in.hasRemaining()) {
+            if (undecoded.position() > 0) {
+                // Complete a character left over from the previous write, one byte at a time
+                undecoded.put(in.get());
+                undecoded.flip();
+                decode(undecoded);
+                undecoded.compact();
+            } else {
+                decode(in);
+                // What the decoder left is an incomplete sequence at the end of this write
+                if (in.remaining() < undecoded.capacity()) undecoded.put(in);
+                else in.position(in.limit());
+            }
+        }
+        schedule();
+    }
+
+    @Override
+    public synchronized void flush() {
+        schedule();
+    }
+
+    /** Empty the console. */
+    public synchronized void clear() {
+        ringStart = 0;
+        ringSize = 0;
+        partial.setLength(0);
+        fresh.clear();
+        overflowed = true;
+        schedule();
+    }
+
+    /**
+     * Stop or resume updating the text area, e.g. while its tab is hidden. On resume it is rebuilt
+     * from the ring buffer.
+     */
+    public synchronized void setShown(boolean shown) {
+        if (this.shown == shown) return;
+        this.shown = shown;
+        if (shown) {
+            fresh.clear();
+            overflowed = true;
+            schedule();
+        }
+    }
+
+    private void decode(ByteBuffer in) {
+        CoderResult result;
+        do {
+            result = decoder.decode(in, decoded, false);
+            decoded.flip();
+            while (decoded.hasRemaining()) {
+                char c = decoded.get();
+                if (c == '\n') {
+                    addLine(partial.toString());
+                    partial.setLength(0);
+                } else if (c != '\r') {
+                    partial.append(c);
+                }
+            }
+            decoded.clear();
+        } while (result.isOverflow());
+    }
+
+    private void addLine(String line) {
+        ring[(ringStart + ringSize) % maxLines] = line;
+        if (ringSize < maxLines) ringSize++;
+        else ringStart = (ringStart + 1) % maxLines;
+        if (!shown) return;
+        fresh.add(line);
+        if (fresh.size() > maxLines) {
+            fresh.clear();
+            overflowed = true;
+        }
+    }
+
+    private void schedule() {
+        if (scheduled || !shown) return;
+        scheduled = true;
+        timer.restart();
+    }
+
+    /** Bring the text area up to date. Runs on the EDT from the timer. */
+    private void update() {
+        String appended;
+        String unfinished;
+        boolean rebuild;
+        synchronized (this) {
+            scheduled = false;
+            rebuild = overflowed;
+            StringBuilder sb = new StringBuilder();
+            if (rebuild) {
+                for (int i = 0; i < ringSize; i++) sb.append(ring[(ringStart + i) % maxLines]).append('\n');
+            } else {
+                for (String line : fresh) sb.append(line).append('\n');
+            }
+            appended = sb.toString();
+            unfinished = partial.toString();
+            fresh.clear();
+            overflowed = false;
+        }
+        try {
+            if (rebuild) {
+                textArea.setText(appended + unfinished);
+            } else {
+                int length = textArea.getDocument().getLength();
+                textArea.replaceRange(appended + unfinished, length - shownPartialLength, length);
+                int excess = textArea.getLineCount() - 1 - maxLines;
+                if (excess > 0) textArea.replaceRange("", 0, textArea.getLineStartOffset(excess));
+            }
+        } catch (BadLocationException e) {
+            textArea.setText(appended + unfinished);
+        }
+        shownPartialLength = unfinished.length();
+        textArea.setCaretPosition(textArea.getDocument().getLength());
+    }
+}
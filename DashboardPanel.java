@@ -0,0 +1,245 @@
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.border.EmptyBorder;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.HierarchyEvent;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Operations dashboard: orders per minute, average order latency, queue depth, cash vs. card
+ * revenue and ingredient levels, drawn from a {@link MetricsSampler}.
+ *
+ * The charts are sweep charts. Every sample has a fixed column (its number modulo the capacity)
+ * and a cursor moves across the plot, overwriting the oldest samples, so a new sample repaints only
+ * the columns around the cursor and the legend instead of scrolling the whole chart. A chart is
+ * repainted in full only when the y axis changes: a value outgrows it, a series appears, or the
+ * cursor wraps around (when the axis may also shrink). Nothing is repainted while hidden.
+ */
+public class DashboardPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+
+    private static final Color[] COLORS = {
+            new Color(0x1f77b4), new Color(0xd62728), new Color(0x2ca02c), new Color(0xff7f0e),
+            new Color(0x9467bd), new Color(0x8c564b), new Color(0xe377c2), new Color(0x7f7f7f),
+            new Color(0xbcbd22), new Color(0x17becf)
+    };
+
+    private final MetricsSampler sampler;
+    private final SweepChart[] charts;
+
+    public DashboardPanel(MetricsSampler sampler) {
+        super(new GridBagLayout());
+        this.sampler = sampler;
+        setOpaque(false);
+        setBorder(new EmptyBorder(6, 6, 6, 6));
+        charts = new SweepChart[]{
+                new SweepChart(sampler, "Поръчки в минута", "%.0f", () -> List.of(sampler.getOrdersPerMinute())),
+                new SweepChart(sampler, "Средно време на поръчка (ms)", "%.0f", () -> List.of(sampler.getAverageLatency())),
+                new SweepChart(sampler, "Чакащи поръчки", "%.0f", () -> List.of(sampler.getQueueDepth())),
+                new SweepChart(sampler, "Оборот: в брой / карта (лв.)", "%.2f",
+                        () -> List.of(sampler.getCashRevenue(), sampler.getCardRevenue())),
+                new SweepChart(sampler, "Наличности на съставките", "%.0f", sampler::getIngredientLevels)
+        };
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.fill = GridBagConstraints.BOTH;
+        gbc.weightx = 1;
+        gbc.weighty = 1;
+        gbc.insets = new Insets(3, 3, 3, 3);
+        for (int i = 0; i < 4; i++) {
+            gbc.gridx = i % 2;
+            gbc.gridy = i / 2;
+            add(charts[i], gbc);
+        }
+        gbc.gridx = 0;
+        gbc.gridy = 2;
+        gbc.gridwidth = 2;
+        add(charts[4], gbc);
+
+        // Samples taken while hidden were not drawn: rescale and paint everything when shown again
+        addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && isShowing()) {
+                for (SweepChart c : charts) c.rescale();
+            }
+        });
+    }
+
+    /** Call on the EDT after each sample. */
+    public void sampleAdded() {
+        if (!isShowing()) return;
+        long count = sampler.getSampleCount();
+        for (SweepChart c : charts) c.sampleAdded(count);
+    }
+
+    private static class SweepChart extends JComponent {
+        private static final long serialVersionUID = 1L;
+        private static final int TOP = 36; // title and legend
+        private static final int LEFT = 56; // y axis labels
+        private static final int RIGHT = 8;
+        private static final int BOTTOM = 6;
+        private static final int GRID_LINES = 4;
+        private static final Color GRID = new Color(225, 225, 225);
+        private static final Color CURSOR = new Color(160, 160, 160);
+
+        private final MetricsSampler sampler;
+        private final String title;
+        private final String format;
+        private final Supplier<List<MetricsSampler.Series>> series;
+        private double scale = 1; // value at the top of the y axis
+        private int seriesCount;
+
+        SweepChart(MetricsSampler sampler, String title, String format, Supplier<List<MetricsSampler.Series>> series) {
+            this.sampler = sampler;
+            this.title = title;
+            this.format = format;
+            this.series = series;
+            setOpaque(true);
+            setBackground(Color.WHITE);
+            setPreferredSize(new Dimension(300, 150));
+        }
+
+        /** Fit the y axis to the samples held and repaint everything. */
+        void rescale() {
+            List<MetricsSampler.Series> list = series.get();
+            double max = 0;
+            for (MetricsSampler.Series s : list) max = Math.max(max, s.max());
+            seriesCount = list.size();
+            scale = niceCeil(max);
+            repaint();
+        }
+
+        void sampleAdded(long count) {
+            List<MetricsSampler.Series> list = series.get();
+            int capacity = sampler.getCapacity();
+            int cursor = (int) ((count - 1) % capacity);
+            double latest = 0;
+            for (MetricsSampler.Series s : list) {
+                double v = s.latest();
+                if (v > latest) latest = v;
+            }
+            if (list.size() != seriesCount || latest > scale || cursor == 0) {
+                rescale();
+                return;
+            }
+            // The segment ending at the new sample, the old cursor before it and the gap after it
+            int x0 = x(cursor - 1, capacity) - 2;
+            int x1 = x(Math.min(cursor + 1, capacity - 1), capacity) + 2;
+            repaint(x0, TOP, x1 - x0, getHeight() - TOP);
+            repaint(0, 0, getWidth(), TOP); // legend values
+        }
+
+        @Override
+        protected void paintComponent(Graphics graphics) {
+            Graphics2D g = (Graphics2D) graphics.create();
+            try {
+                Rectangle clip = g.getClipBounds();
+                if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+                g.setColor(getBackground());
+                g.fillRect(clip.x, clip.y, clip.width, clip.height);
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+                List<MetricsSampler.Series> list = series.get();
+                int capacity = sampler.getCapacity();
+                long newest = sampler.getSampleCount() - 1;
+                FontMetrics fm = g.getFontMetrics();
+                int bottom = getHeight() - BOTTOM;
+
+                if (clip.y < TOP) paintLegend(g, fm, list);
+
+                // Grid and y labels, with as many decimals as the grid step needs
+                double step = scale / GRID_LINES;
+                int decimals = 0;
+                while (decimals < 3 && Math.abs(step * Math.pow(10, decimals) - Math.round(step * Math.pow(10, decimals))) > 1e-9) decimals++;
+                String axisFormat = "%." + decimals + "f";
+                for (int i = 0; i <= GRID_LINES; i++) {
+                    double v = scale * i / GRID_LINES;
+                    int y = y(v);
+                    g.setColor(GRID);
+                    g.drawLine(LEFT, y, getWidth() - RIGHT, y);
+                    if (clip.x < LEFT) {
+                        String label = String.format(axisFormat, v);
+                        g.setColor(Color.DARK_GRAY);
+                        g.drawString(label, LEFT - 4 - fm.stringWidth(label), y + fm.getAscent() / 2 - 1);
+                    }
+                }
+                if (newest < 0) return;
+
+                // Only the columns inside the clip
+                int cursor = (int) (newest % capacity);
+                int first = Math.max(1, slotAt(clip.x, capacity) - 1);
+                int last = Math.min(capacity - 1, slotAt(clip.x + clip.width, capacity) + 1);
+                g.clipRect(LEFT, TOP, getWidth() - LEFT - RIGHT + 1, bottom - TOP + 1);
+                g.setStroke(new BasicStroke(1.5f));
+                for (int i = 0; i < list.size(); i++) {
+                    MetricsSampler.Series s = list.get(i);
+                    g.setColor(COLORS[i % COLORS.length]);
+                    for (int slot = first; slot <= last; slot++) {
+                        long k = newest - (cursor - slot + capacity) % capacity;
+                        if (k - 1 <= newest - capacity || k < 1) continue; // the gap after the cursor
+                        double a = s.get(k - 1);
+                        double b = s.get(k);
+                        if (Double.isNaN(a) || Double.isNaN(b)) continue;
+                        g.drawLine(x(slot - 1, capacity), y(a), x(slot, capacity), y(b));
+                    }
+                }
+                g.setStroke(new BasicStroke(1f));
+                g.setColor(CURSOR);
+                int cx = x(cursor, capacity);
+                g.drawLine(cx, TOP, cx, bottom);
+            } finally {
+                g.dispose();
+            }
+        }
+
+        private void paintLegend(Graphics2D g, FontMetrics fm, List<MetricsSampler.Series> list) {
+            g.setColor(Color.BLACK);
+            g.drawString(title, 6, fm.getAscent() + 2);
+            int x = 6;
+            int y = TOP - 6;
+            for (int i = 0; i < list.size(); i++) {
+                MetricsSampler.Series s = list.get(i);
+                double v = s.latest();
+                String text = s.getName() + ": " + (Double.isNaN(v) ? "-" : String.format(format, v));
+                g.setColor(COLORS[i % COLORS.length]);
+                g.fillRect(x, y - fm.getAscent() + 2, 8, 8);
+                g.setColor(Color.DARK_GRAY);
+                g.drawString(text, x + 11, y);
+                x += 11 + fm.stringWidth(text) + 12;
+            }
+        }
+
+        private int x(int slot, int capacity) {
+            return LEFT + (int) Math.round((double) slot * (getWidth() - LEFT - RIGHT) / (capacity - 1));
+        }
+
+        private int slotAt(int px, int capacity) {
+            int width = Math.max(1, getWidth() - LEFT - RIGHT);
+            return (int) Math.floor((double) (px - LEFT) * (capacity - 1) / width);
+        }
+
+        private int y(double v) {
+            int bottom = getHeight() - BOTTOM;
+            return bottom - (int) Math.round(v / scale * (bottom - TOP));
+        }
+
+        /** Smallest 1, 2 or 5 times a power of ten that is at least v (1 for no data). */
+        private static double niceCeil(double v) {
+            if (!(v > 0)) return 1;
+            double magnitude = Math.pow(10, Math.floor(Math.log10(v)));
+            for (double m : new double[]{1, 2, 5, 10}) {
+                if (m * magnitude >= v) return m * magnitude;
+            }
+            return 10 * magnitude;
+        }
+    }
+}
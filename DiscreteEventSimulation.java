@@ -0,0 +1,427 @@
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+/**
+ * Discrete-event simulation of the coffee machine for capacity planning.
+ *
+ * Time is virtual: the engine jumps from one scheduled event to the next (customer arrivals, brew
+ * batches finishing, refill rounds, end of day) and the machine stamps its events from a
+ * {@link VirtualClock}, so weeks of operation run in seconds. The machine starts from the state in
+ * the data directory but never writes to it. Runs are deterministic for a given seed.
+ *
+ * Example:
+ *   java DiscreteEventSimulation --days 28 --peak 90 --batch 8 --seed 7
+ */
+public class DiscreteEventSimulation {
+
+    /**
+     * Clock that only moves when the simulation advances it.
+     */
+    public static class VirtualClock extends Clock {
+        private final ZoneId zone;
+        private long millis;
+
+        public VirtualClock(long startMillis, ZoneId zone) {
+            this.millis = startMillis;
+            this.zone = zone;
+        }
+
+        public long millis() { return millis; }
+        @Override public Instant instant() { return Instant.ofEpochMilli(millis); }
+        @Override public ZoneId getZone() { return zone; }
+        @Override public Clock withZone(ZoneId zone) { return new VirtualClock(millis, zone); }
+
+        void advanceTo(long millis) {
+            if (millis < this.millis) throw new IllegalStateException("Времето не може да върви назад");
+            this.millis = millis;
+        }
+    }
+
+    private static class ScheduledAction implements Comparable<ScheduledAction> {
+        final long at;
+        final long seq;
+        final Runnable action;
+
+        ScheduledAction(long at, long seq, Runnable action) {
+            this.at = at;
+            this.seq = seq;
+            this.action = action;
+        }
+
+        @Override public int compareTo(ScheduledAction o) {
+            // Same-time actions run in the order they were scheduled, which keeps runs deterministic
+            return at != o.at ? Long.compare(at, o.at) : Long.compare(seq, o.seq);
+        }
+    }
+
+    // ---------------- Engine ----------------
+
+    private final VirtualClock clock;
+    private final PriorityQueue<ScheduledAction> agenda = new PriorityQueue<>();
+    private long nextSeq;
+    private long processed;
+
+    public DiscreteEventSimulation(VirtualClock clock) {
+        this.clock = clock;
+    }
+
+    public VirtualClock getClock() { return clock; }
+    public long now() { return clock.millis(); }
+    public long getProcessedEvents() { return processed; }
+
+    public void scheduleAt(long atMillis, Runnable action) {
+        agenda.add(new ScheduledAction(Math.max(atMillis, now()), nextSeq++, action));
+    }
+
+    public void scheduleAfter(long delayMillis, Runnable action) {
+        scheduleAt(now() + delayMillis, action);
+    }
+
+    /**
+     * Run events in time order until the agenda is empty or the next event is after untilMillis.
+     */
+    public void runUntil(long untilMillis) {
+        while (!agenda.isEmpty() && agenda.peek().at <= untilMillis) {
+            ScheduledAction next = agenda.poll();
+            clock.advanceTo(next.at);
+            next.action.run();
+            processed++;
+        }
+        if (untilMillis > now()) clock.advanceTo(untilMillis);
+    }
+
+    /** Run until nothing is scheduled any more. */
+    public void run() {
+        while (!agenda.isEmpty()) {
+            ScheduledAction next = agenda.poll();
+            clock.advanceTo(next.at);
+            next.action.run();
+            processed++;
+        }
+    }
+
+    // ---------------- Coffee shop model ----------------
+
+    static class Config {
+        int days = 7;
+        double peakPerHour = 60; // customers per hour in the busiest hour
+        int openHour = 7;
+        int closeHour = 20;
+        int batchSize = 8;
+        int maxWaiting = 30; // customers arriving to a longer line walk away
+        int refillPercent = 25; // refill an ingredient to its starting level when it drops below this
+        long seed = 42;
+        LocalDate startDate = LocalDate.of(2025, 1, 6);
+        File dataDir = new File(".");
+        Map<Integer, Integer> orderSizes = new LinkedHashMap<>();
+
+        Config() {
+            orderSizes.put(1, 70);
+            orderSizes.put(2, 20);
+            orderSizes.put(3, 10);
+        }
+
+        static Config parse(String[] args) {
+            Config c = new Config();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (arg) {
+                    case "--days": c.days = Integer.parseInt(value); i++; break;
+                    case "--peak": c.peakPerHour = Double.parseDouble(value); i++; break;
+                    case "--open": c.openHour = Integer.parseInt(value); i++; break;
+                    case "--close": c.closeHour = Integer.parseInt(value); i++; break;
+                    case "--batch": c.batchSize = Integer.parseInt(value); i++; break;
+                    case "--max-waiting": c.maxWaiting = Integer.parseInt(value); i++; break;
+                    case "--refill-percent": c.refillPercent = Integer.parseInt(value); i++; break;
+                    case "--seed": c.seed = Long.parseLong(value); i++; break;
+                    case "--start": c.startDate = LocalDate.parse(value); i++; break;
+                    case "--dir": c.dataDir = new File(value); i++; break;
+                    case "--sizes": {
+                        c.orderSizes = new LinkedHashMap<>();
+                        for (Map.Entry<String, Integer> e : LoadGenerator.Config.parseWeights(value).entrySet()) {
+                            c.orderSizes.put(Integer.parseInt(e.getKey()), e.getValue());
+                        }
+                        i++;
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("Непознат аргумент: " + arg);
+                }
+            }
+            if (c.days < 1) throw new IllegalArgumentException("--days трябва да е поне 1");
+            if (c.openHour < 0 || c.closeHour > 24 || c.openHour >= c.closeHour) {
+                throw new IllegalArgumentException("Невалидно работно време");
+            }
+            return c;
+        }
+    }
+
+    // Share of the peak arrival rate for each hour of the day: morning rush, lunch, quiet evening
+    private static final double[] HOURLY_LOAD = {
+            0, 0, 0, 0, 0, 0, 0.2, 0.8,
+            1.0, 0.9, 0.6, 0.5, 0.7, 0.7, 0.5, 0.5,
+            0.6, 0.5, 0.4, 0.3, 0.2, 0.1, 0, 0
+    };
+
+    private static class Customer {
+        final long arrivedAt;
+        final List<String> drinks;
+
+        Customer(long arrivedAt, List<String> drinks) {
+            this.arrivedAt = arrivedAt;
+            this.drinks = drinks;
+        }
+    }
+
+    private static class DayStats {
+        final LocalDate date;
+        int arrived;
+        int served;
+        int outOfStock;
+        int walkedAway;
+        int cups;
+        double revenue;
+        final LoadGenerator.LatencyRecorder waits = new LoadGenerator.LatencyRecorder();
+
+        DayStats(LocalDate date) {
+            this.date = date;
+        }
+    }
+
+    /**
+     * One run of the coffee shop: the machine, its brewing scheduler and the customers, driven by
+     * the engine.
+     */
+    static class CoffeeShop {
+        private final Config config;
+        private final DiscreteEventSimulation sim;
+        private final CoffeeMachineSimulator.CoffeeMachine machine;
+        private final BrewScheduler scheduler = new BrewScheduler();
+        private final SplittableRandom rnd;
+        private final LoadGenerator.WeightedChoice<String> drinks;
+        private final LoadGenerator.WeightedChoice<Integer> sizes;
+        private final Map<String, Integer> parLevels;
+        private final Deque<Customer> line = new ArrayDeque<>();
+        private final Map<BrewScheduler.Resource, Long> busyMillis = new EnumMap<>(BrewScheduler.Resource.class);
+        private final List<DayStats> days = new ArrayList<>();
+        private final LoadGenerator.LatencyRecorder allWaits = new LoadGenerator.LatencyRecorder();
+        private boolean brewing;
+        private int refills;
+        private double collected;
+        private long openMillis;
+        private DayStats today;
+
+        CoffeeShop(Config config, DiscreteEventSimulation sim, CoffeeMachineSimulator.CoffeeMachine machine) {
+            this.config = config;
+            this.sim = sim;
+            this.machine = machine;
+            this.rnd = new SplittableRandom(config.seed);
+            // Sorted so the drink mix does not depend on HashMap iteration order
+            Map<String, Integer> mix = new LinkedHashMap<>();
+            for (String name : new TreeSet<>(machine.getMenu().keySet())) mix.put(name, 1);
+            this.drinks = new LoadGenerator.WeightedChoice<>(mix);
+            this.sizes = new LoadGenerator.WeightedChoice<>(config.orderSizes);
+            this.parLevels = new HashMap<>(machine.getInventory());
+            for (BrewScheduler.Resource r : BrewScheduler.Resource.values()) busyMillis.put(r, 0L);
+        }
+
+        void start() {
+            for (int d = 0; d < config.days; d++) {
+                LocalDate date = config.startDate.plusDays(d);
+                long dayStart = date.atStartOfDay(sim.getClock().getZone()).toInstant().toEpochMilli();
+                sim.scheduleAt(dayStart + config.openHour * 3_600_000L, () -> openDay(date, dayStart));
+                sim.scheduleAt(dayStart + config.closeHour * 3_600_000L, this::closeDay);
+            }
+        }
+
+        private void openDay(LocalDate date, long dayStart) {
+            today = new DayStats(date);
+            days.add(today);
+            openMillis += (config.closeHour - config.openHour) * 3_600_000L;
+            refillRound();
+            scheduleNextArrival(dayStart + config.closeHour * 3_600_000L);
+            for (int h = config.openHour + 1; h < config.closeHour; h++) {
+                sim.scheduleAt(dayStart + h * 3_600_000L, this::refillRound);
+            }
+        }
+
+        /**
+         * Non-homogeneous Poisson arrivals by thinning: candidates at the peak rate, each kept with
+         * probability load(hour).
+         */
+        private void scheduleNextArrival(long closesAt) {
+            double meanGapMillis = 3_600_000.0 / config.peakPerHour;
+            long at = sim.now();
+            while (true) {
+                at += (long) Math.ceil(-Math.log(1.0 - rnd.nextDouble()) * meanGapMillis);
+                if (at >= closesAt) return;
+                int hour = LocalDateTime.ofInstant(Instant.ofEpochMilli(at), sim.getClock().getZone()).getHour();
+                if (rnd.nextDouble() < HOURLY_LOAD[hour]) break;
+            }
+            sim.scheduleAt(at, () -> {
+                arrive();
+                scheduleNextArrival(closesAt);
+            });
+        }
+
+        private void arrive() {
+            today.arrived++;
+            if (line.size() >= config.maxWaiting) {
+                today.walkedAway++;
+                return;
+            }
+            int n = sizes.next(rnd);
+            List<String> order = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) order.add(drinks.next(rnd));
+            line.add(new Customer(sim.now(), order));
+            if (!brewing) startBatch();
+        }
+
+        /**
+         * Same batching as {@link OrderQueue}: take up to batchSize waiting orders, validate them in one
+         * pass and brew the accepted cups according to the scheduler's plan.
+         */
+        private void startBatch() {
+            if (line.isEmpty()) {
+                brewing = false;
+                return;
+            }
+            brewing = true;
+            List<Customer> batch = new ArrayList<>();
+            while (!line.isEmpty() && batch.size() < config.batchSize) batch.add(line.poll());
+            List<List<String>> orders = new ArrayList<>(batch.size());
+            for (Customer c : batch) orders.add(c.drinks);
+            boolean[] accepted = machine.makeOrders(orders);
+
+            List<CoffeeMachineSimulator.Drink> cups = new ArrayList<>();
+            List<Integer> cupOwner = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                if (!accepted[i]) {
+                    today.outOfStock++;
+                    continue;
+                }
+                for (String name : batch.get(i).drinks) {
+                    CoffeeMachineSimulator.Drink d = machine.getMenu().get(name);
+                    cups.add(d);
+                    cupOwner.add(i);
+                    today.revenue += d.getPrice();
+                }
+            }
+            BrewScheduler.Schedule plan = scheduler.plan(cups);
+            for (BrewScheduler.ScheduledStep step : plan.getSteps()) {
+                busyMillis.merge(step.getResource(), step.getEndMillis() - step.getStartMillis(), Long::sum);
+            }
+            long[] readyAt = new long[batch.size()];
+            for (int cup = 0; cup < cups.size(); cup++) {
+                int owner = cupOwner.get(cup);
+                readyAt[owner] = Math.max(readyAt[owner], plan.getCupCompletionMillis(cup));
+            }
+            long batchStart = sim.now();
+            DayStats day = today;
+            for (int i = 0; i < batch.size(); i++) {
+                if (!accepted[i]) continue;
+                Customer c = batch.get(i);
+                sim.scheduleAt(batchStart + readyAt[i], () -> {
+                    long wait = sim.now() - c.arrivedAt;
+                    day.waits.record(wait);
+                    allWaits.record(wait);
+                    day.served++;
+                    day.cups += c.drinks.size();
+                });
+            }
+            sim.scheduleAt(batchStart + plan.getMakespanMillis(), this::startBatch);
+        }
+
+        private void refillRound() {
+            for (Map.Entry<String, Integer> e : parLevels.entrySet()) {
+                int current = machine.getInventory().getOrDefault(e.getKey(), 0);
+                if (e.getValue() > 0 && current * 100L < (long) e.getValue() * config.refillPercent) {
+                    machine.refillInventory(e.getKey(), e.getValue() - current);
+                    refills++;
+                }
+            }
+        }
+
+        private void closeDay() {
+            // Customers still in line at closing are served; only new arrivals stop
+            collected += machine.collectCash();
+        }
+
+        void printReport(PrintStream out, long wallNanos, long events) {
+            out.println(String.format("%-12s %8s %8s %8s %8s %8s %10s %10s %10s",
+                    "ден", "клиенти", "обсл.", "без стока", "напуснали", "чаши", "приход лв.", "p50 чак. s", "p99 чак. s"));
+            for (DayStats d : days) {
+                d.waits.sort();
+                out.println(String.format("%-12s %8d %8d %8d %8d %8d %10.2f %10.1f %10.1f",
+                        d.date, d.arrived, d.served, d.outOfStock, d.walkedAway, d.cups, d.revenue,
+                        d.waits.percentile(50) / 1000.0, d.waits.percentile(99) / 1000.0));
+            }
+            allWaits.sort();
+            out.println(String.format("Чакане общо: p50 %.1f s, p90 %.1f s, p99 %.1f s, max %.1f s",
+                    allWaits.percentile(50) / 1000.0, allWaits.percentile(90) / 1000.0,
+                    allWaits.percentile(99) / 1000.0, allWaits.percentile(100) / 1000.0));
+            out.print("Натоварване на ресурсите:");
+            for (BrewScheduler.Resource r : BrewScheduler.Resource.values()) {
+                double util = openMillis == 0 ? 0 : 100.0 * busyMillis.get(r) / ((double) openMillis * r.getUnits());
+                out.print(String.format(" %s %.1f%%", r.getLabel(), util));
+            }
+            out.println();
+            out.println(String.format("Зареждания: %d, събрани пари: %.2f лв., печалба: %.2f лв.",
+                    refills, collected, machine.getTotalProfitAmount()));
+            out.println(String.format("⏱ %d дни симулирани за %.2f s реално време (%d събития)",
+                    days.size(), wallNanos / 1e9, events));
+        }
+    }
+
+    // ---------------- Run ----------------
+
+    public static void main(String[] args) {
+        Config config;
+        try {
+            config = Config.parse(args);
+        } catch (RuntimeException e) {
+            System.out.println("❌ " + e.getMessage());
+            System.out.println("Употреба: java DiscreteEventSimulation [--days N] [--peak клиенти/час] [--open Ч] [--close Ч]"
+                    + " [--batch N] [--max-waiting N] [--refill-percent P] [--sizes \"брой=тегло,...\"]"
+                    + " [--seed N] [--start yyyy-MM-dd] [--dir папка]");
+            return;
+        }
+
+        PrintStream report = System.out;
+        VirtualClock clock = new VirtualClock(config.startDate.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli(), ZoneOffset.UTC);
+        DiscreteEventSimulation sim = new DiscreteEventSimulation(clock);
+
+        // The machine logs every drink; that would dominate the run time
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long t0 = System.nanoTime();
+        CoffeeShop shop;
+        try {
+            CoffeeMachineSimulator.CoffeeMachine machine = new CoffeeMachineSimulator.CoffeeMachine(config.dataDir, clock, false);
+            shop = new CoffeeShop(config, sim, machine);
+            shop.start();
+            sim.run();
+        } finally {
+            System.setOut(report);
+        }
+        shop.printReport(report, System.nanoTime() - t0, sim.getProcessedEvents());
+    }
+}
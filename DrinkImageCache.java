@@ -0,0 +1,179 @@
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bounded LRU cache of drink images, decoded and scaled to the size they are shown at.
+ *
+ * Entries are keyed by path, file modification time and target size, so a replaced file or a
+ * different label size is a miss rather than a stale hit. Decoding and scaling run on a small
+ * background pool; concurrent requests for the same key share one load. The Swing side asks
+ * {@link #getIfPresent} first and only falls back to {@link #load} (and a placeholder) on a miss.
+ */
+public class DrinkImageCache {
+
+    static final class Key {
+        final String path;
+        final long modified;
+        final int width;
+        final int height;
+
+        Key(String path, long modified, int width, int height) {
+            this.path = path;
+            this.modified = modified;
+            this.width = width;
+            this.height = height;
+        }
+
+        static Key of(String path, int width, int height) {
+            File f = new File(path);
+            return new Key(f.getAbsolutePath(), f.lastModified(), width, height);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return modified == k.modified && width == k.width && height == k.height && path.equals(k.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, modified, width, height);
+        }
+    }
+
+    private final int maxEntries;
+    private final Map<Key, ImageIcon> icons;
+    private final Map<Key, CompletableFuture<ImageIcon>> loading = new HashMap<>();
+    private final ExecutorService decoder;
+    private final ThumbnailStore thumbnails; // may be null
+
+    public DrinkImageCache(int maxEntries, int threads) {
+        this(maxEntries, threads, null);
+    }
+
+    /**
+     * @param maxEntries scaled images kept; the least recently shown one is dropped first
+     * @param threads    background decoder threads
+     * @param thumbnails on-disk store consulted before decoding a full-size file, or null
+     */
+    public DrinkImageCache(int maxEntries, int threads, ThumbnailStore thumbnails) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.thumbnails = thumbnails;
+        this.icons = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, ImageIcon> eldest) {
+                return size() > DrinkImageCache.this.maxEntries;
+            }
+        };
+        this.decoder = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "image-decoder");
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+    }
+
+    /** Cached image for this file at this size, or null. Cheap enough for the EDT. */
+    public synchronized ImageIcon getIfPresent(String path, int width, int height) {
+        return icons.get(Key.of(path, width, height));
+    }
+
+    /**
+     * Decode and scale in the background. The future completes with null when the file is not a
+     * readable image, and fails with the IOException when it cannot be read at all.
+     */
+    public synchronized CompletableFuture<ImageIcon> load(String path, int width, int height) {
+        Key key = Key.of(path, width, height);
+        ImageIcon cached = icons.get(key);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        CompletableFuture<ImageIcon> pending = loading.get(key);
+        if (pending != null) return pending;
+
+        CompletableFuture<ImageIcon> future = new CompletableFuture<>();
+        loading.put(key, future);
+        decoder.execute(() -> {
+            try {
+                ImageIcon icon = decode(key);
+                synchronized (this) {
+                    loading.remove(key);
+                    if (icon != null) icons.put(key, icon);
+                }
+                future.complete(icon);
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    loading.remove(key);
+                }
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /** Warm the cache for an image that is likely to be shown next; errors are ignored. */
+    public void prefetch(String path, int width, int height) {
+        if (path == null || path.trim().isEmpty() || !new File(path).isFile()) return;
+        load(path, width, height);
+    }
+
+    public synchronized void clear() {
+        icons.clear();
+    }
+
+    public void shutdown() {
+        decoder.shutdownNow();
+    }
+
+    private ImageIcon decode(Key key) throws IOException {
+        if (key.path.toLowerCase(Locale.ROOT).endsWith(".gif")) {
+            // Kept as the toolkit loads it so animated GIFs keep animating
+            return new ImageIcon(key.path);
+        }
+        if (thumbnails != null) {
+            BufferedImage thumb = thumbnails.load(new File(key.path), key.width, key.height, ThumbnailStore.Fit.CONTAIN);
+            return thumb != null ? new ImageIcon(thumb) : null;
+        }
+        BufferedImage img = ImageIO.read(new File(key.path));
+        if (img == null) return null;
+        double scale = Math.min((double) key.width / img.getWidth(), (double) key.height / img.getHeight());
+        int w = Math.max(1, (int) (img.getWidth() * scale));
+        int h = Math.max(1, (int) (img.getHeight() * scale));
+        return new ImageIcon(scale(img, w, h));
+    }
+
+    /**
+     * Scale to exactly w x h. Shrinking is done in halving steps with bilinear filtering, which is
+     * close to SCALE_SMOOTH in quality but produces a ready image instead of a lazily drawn one.
+     */
+    static BufferedImage scale(BufferedImage src, int w, int h) {
+        int type = src.getTransparency() == BufferedImage.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage current = src;
+        int cw = src.getWidth();
+        int ch = src.getHeight();
+        do {
+            cw = cw / 2 >= w ? cw / 2 : w;
+            ch = ch / 2 >= h ? ch / 2 : h;
+            BufferedImage next = new BufferedImage(cw, ch, type);
+            Graphics2D g = next.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(current, 0, 0, cw, ch, null);
+            g.dispose();
+            current = next;
+        } while (cw != w || ch != h);
+        return current;
+    }
+}
@@ -0,0 +1,338 @@
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless load generator: drives a {@link CoffeeMachineSimulator.CoffeeMachine} with synthetic
+ * order streams from N concurrent clients and reports throughput and latency percentiles per operation.
+ *
+ * The machine runs on a scratch copy of the state in a temp directory, so the real
+ * machine_state.json is never touched.
+ *
+ * Example:
+ *   java LoadGenerator --clients 8 --duration 20 --mix "Еспресо=5,Лате=3,Капучино=2" --sizes "1=70,2=20,4=10" --refill-every 100
+ *
+ * With --queue orders go through an {@link OrderQueue} (batched brewing, group commit, CSV) instead of
+ * calling CoffeeMachine.makeOrder directly, so both paths can be compared.
+ */
+public class LoadGenerator {
+
+    static final String OP_ORDER = "order";
+    static final String OP_AVAILABILITY = "availability";
+    static final String OP_REFILL = "refill";
+
+    // ---------------- Configuration ----------------
+
+    static class Config {
+        int clients = 4;
+        long durationSeconds = 10;
+        long ordersPerClient = 0; // 0 = run for durationSeconds
+        Map<String, Integer> drinkMix = new LinkedHashMap<>(); // empty = whole menu, equal weights
+        Map<Integer, Integer> orderSizes = new LinkedHashMap<>();
+        int refillEvery = 50; // orders per client between refills, 0 = never
+        int refillAmount = 5000;
+        long seed = 42;
+        File stateSource = new File("machine_state.json");
+        boolean useQueue = false;
+        int queueCapacity = 256;
+        int batchSize = 32;
+
+        Config() {
+            orderSizes.put(1, 70);
+            orderSizes.put(2, 20);
+            orderSizes.put(3, 7);
+            orderSizes.put(5, 3);
+        }
+
+        static Config parse(String[] args) {
+            Config c = new Config();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (arg) {
+                    case "--clients": c.clients = Integer.parseInt(value); i++; break;
+                    case "--duration": c.durationSeconds = Long.parseLong(value); i++; break;
+                    case "--orders": c.ordersPerClient = Long.parseLong(value); i++; break;
+                    case "--mix": c.drinkMix = parseWeights(value); i++; break;
+                    case "--sizes": {
+                        c.orderSizes = new LinkedHashMap<>();
+                        for (Map.Entry<String, Integer> e : parseWeights(value).entrySet()) {
+                            c.orderSizes.put(Integer.parseInt(e.getKey()), e.getValue());
+                        }
+                        i++;
+                        break;
+                    }
+                    case "--refill-every": c.refillEvery = Integer.parseInt(value); i++; break;
+                    case "--refill-amount": c.refillAmount = Integer.parseInt(value); i++; break;
+                    case "--seed": c.seed = Long.parseLong(value); i++; break;
+                    case "--state": c.stateSource = new File(value); i++; break;
+                    case "--queue": c.useQueue = true; break;
+                    case "--queue-capacity": c.queueCapacity = Integer.parseInt(value); i++; break;
+                    case "--batch": c.batchSize = Integer.parseInt(value); i++; break;
+                    default:
+                        throw new IllegalArgumentException("Непознат аргумент: " + arg);
+                }
+            }
+            if (c.clients < 1) throw new IllegalArgumentException("--clients трябва да е поне 1");
+            if (c.orderSizes.isEmpty()) throw new IllegalArgumentException("--sizes не може да е празно");
+            return c;
+        }
+
+        /** "a=3,b=1" -> {a:3, b:1}; a bare name gets weight 1. */
+        static Map<String, Integer> parseWeights(String spec) {
+            Map<String, Integer> weights = new LinkedHashMap<>();
+            if (spec == null) return weights;
+            for (String part : spec.split(",")) {
+                part = part.trim();
+                if (part.isEmpty()) continue;
+                int eq = part.lastIndexOf('=');
+                if (eq < 0) weights.put(part, 1);
+                else weights.put(part.substring(0, eq).trim(), Integer.parseInt(part.substring(eq + 1).trim()));
+            }
+            return weights;
+        }
+    }
+
+    /**
+     * Weighted choice over a fixed set of values using a cumulative table.
+     */
+    static class WeightedChoice<T> {
+        private final List<T> values = new ArrayList<>();
+        private final int[] cumulative;
+        private final int total;
+
+        WeightedChoice(Map<T, Integer> weights) {
+            cumulative = new int[weights.size()];
+            int sum = 0;
+            int i = 0;
+            for (Map.Entry<T, Integer> e : weights.entrySet()) {
+                if (e.getValue() <= 0) continue;
+                sum += e.getValue();
+                values.add(e.getKey());
+                cumulative[i++] = sum;
+            }
+            if (values.isEmpty()) throw new IllegalArgumentException("Няма стойности с положително тегло");
+            total = sum;
+        }
+
+        T next(SplittableRandom rnd) {
+            int r = rnd.nextInt(total);
+            int idx = Arrays.binarySearch(cumulative, 0, values.size(), r + 1);
+            if (idx < 0) idx = -idx - 1;
+            return values.get(idx);
+        }
+    }
+
+    // ---------------- Latency recording ----------------
+
+    /**
+     * Per-client latency samples for one operation. Not thread-safe; each client owns its own.
+     */
+    static class LatencyRecorder {
+        private long[] samples = new long[1024];
+        private int count;
+        long failures;
+
+        void record(long nanos) {
+            if (count == samples.length) samples = Arrays.copyOf(samples, count * 2);
+            samples[count++] = nanos;
+        }
+
+        void merge(LatencyRecorder other) {
+            if (count + other.count > samples.length) samples = Arrays.copyOf(samples, count + other.count);
+            System.arraycopy(other.samples, 0, samples, count, other.count);
+            count += other.count;
+            failures += other.failures;
+        }
+
+        long percentile(double p) {
+            if (count == 0) return 0;
+            int idx = (int) Math.ceil(p / 100.0 * count) - 1;
+            return samples[Math.max(0, Math.min(count - 1, idx))];
+        }
+
+        void sort() {
+            Arrays.sort(samples, 0, count);
+        }
+    }
+
+    static class ClientResult {
+        final Map<String, LatencyRecorder> ops = new LinkedHashMap<>();
+
+        LatencyRecorder op(String name) {
+            return ops.computeIfAbsent(name, k -> new LatencyRecorder());
+        }
+    }
+
+    // ---------------- Run ----------------
+
+    public static void main(String[] args) throws Exception {
+        Config config;
+        try {
+            config = Config.parse(args);
+        } catch (RuntimeException e) {
+            System.out.println("❌ " + e.getMessage());
+            System.out.println("Употреба: java LoadGenerator [--clients N] [--duration S | --orders N] [--mix \"Име=тегло,...\"]"
+                    + " [--sizes \"брой=тегло,...\"] [--refill-every N] [--refill-amount N] [--seed N] [--state файл]"
+                    + " [--queue [--queue-capacity N] [--batch N]]");
+            return;
+        }
+        run(config);
+    }
+
+    static void run(Config config) throws Exception {
+        PrintStream report = System.out;
+        File dataDir = Files.createTempDirectory("coffee-load").toFile();
+        if (config.stateSource != null && config.stateSource.exists()) {
+            Files.copy(config.stateSource.toPath(), new File(dataDir, "machine_state.json").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        // The machine logs every drink; keep that off the measured path.
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        CoffeeMachineSimulator.CoffeeMachine machine;
+        Map<String, Integer> mix;
+        List<String> ingredients;
+        try {
+            machine = new CoffeeMachineSimulator.CoffeeMachine(dataDir);
+            mix = config.drinkMix.isEmpty() ? equalWeights(machine.getMenu().keySet()) : config.drinkMix;
+            for (String name : mix.keySet()) {
+                if (!machine.getMenu().containsKey(name)) {
+                    throw new IllegalArgumentException("Напитка '" + name + "' не е в менюто.");
+                }
+            }
+            ingredients = new ArrayList<>(machine.getInventory().keySet());
+        } catch (RuntimeException e) {
+            System.setOut(report);
+            report.println("❌ " + e.getMessage());
+            return;
+        }
+
+        OrderQueue queue = null;
+        if (config.useQueue) {
+            queue = new OrderQueue(machine, new SalesCsvLog(new File(dataDir, SalesCsvLog.DEFAULT_FILE)),
+                    config.queueCapacity, config.batchSize);
+            queue.start();
+        }
+        final OrderQueue orderQueue = queue;
+
+        WeightedChoice<String> drinks = new WeightedChoice<>(mix);
+        WeightedChoice<Integer> sizes = new WeightedChoice<>(config.orderSizes);
+
+        report.println(String.format("▶ Натоварване: %d клиента%s, %s, данни в %s",
+                config.clients,
+                config.useQueue ? " през опашка (партида до " + config.batchSize + ")" : "",
+                config.ordersPerClient > 0 ? config.ordersPerClient + " поръчки/клиент" : config.durationSeconds + " s",
+                dataDir.getAbsolutePath()));
+
+        ExecutorService pool = Executors.newFixedThreadPool(config.clients);
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+        List<Future<ClientResult>> futures = new ArrayList<>();
+        for (int c = 0; c < config.clients; c++) {
+            SplittableRandom rnd = new SplittableRandom(config.seed + c);
+            futures.add(pool.submit(() -> {
+                start.await();
+                return runClient(machine, orderQueue, config, drinks, sizes, ingredients, rnd, deadline);
+            }));
+        }
+
+        long t0 = System.nanoTime();
+        start.countDown();
+        ClientResult total = new ClientResult();
+        try {
+            for (Future<ClientResult> f : futures) {
+                for (Map.Entry<String, LatencyRecorder> e : f.get().ops.entrySet()) {
+                    total.op(e.getKey()).merge(e.getValue());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            if (orderQueue != null) orderQueue.stop();
+            machine.close();
+            System.setOut(report);
+        }
+        long elapsed = System.nanoTime() - t0;
+
+        printReport(report, total, elapsed);
+    }
+
+    private static ClientResult runClient(CoffeeMachineSimulator.CoffeeMachine machine, OrderQueue queue, Config config,
+                                          WeightedChoice<String> drinks, WeightedChoice<Integer> sizes,
+                                          List<String> ingredients, SplittableRandom rnd, long deadline) throws Exception {
+        ClientResult result = new ClientResult();
+        LatencyRecorder orders = result.op(OP_ORDER);
+        LatencyRecorder availability = result.op(OP_AVAILABILITY);
+        LatencyRecorder refills = result.op(OP_REFILL);
+        List<String> order = new ArrayList<>();
+
+        for (long n = 0; ; n++) {
+            if (config.ordersPerClient > 0 ? n >= config.ordersPerClient : System.nanoTime() >= deadline) break;
+
+            if (config.refillEvery > 0 && n > 0 && n % config.refillEvery == 0) {
+                for (String ingredient : ingredients) {
+                    long t = System.nanoTime();
+                    machine.refillInventory(ingredient, config.refillAmount);
+                    refills.record(System.nanoTime() - t);
+                }
+            }
+
+            order.clear();
+            int size = sizes.next(rnd);
+            for (int i = 0; i < size; i++) order.add(drinks.next(rnd));
+
+            long t = System.nanoTime();
+            boolean available = machine.checkTotalIngredients(order);
+            availability.record(System.nanoTime() - t);
+
+            t = System.nanoTime();
+            boolean made;
+            if (queue != null) {
+                OrderQueue.OrderRequest request = new OrderQueue.OrderRequest(order, 0.0, 0.0, "LOAD", null, null, "-");
+                try {
+                    made = queue.submit(request, 10, TimeUnit.SECONDS).get().isAccepted();
+                } catch (ExecutionException e) {
+                    made = false;
+                }
+            } else {
+                made = machine.makeOrder(order);
+            }
+            orders.record(System.nanoTime() - t);
+            if (!available || !made) orders.failures++;
+        }
+        return result;
+    }
+
+    static void printReport(PrintStream out, ClientResult total, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        out.println(String.format("⏱ Продължителност: %.2f s", seconds));
+        out.println(String.format("%-14s %10s %10s %10s %10s %10s %10s %10s",
+                "операция", "брой", "отказани", "оп/с", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        for (Map.Entry<String, LatencyRecorder> e : total.ops.entrySet()) {
+            LatencyRecorder r = e.getValue();
+            r.sort();
+            out.println(String.format("%-14s %10d %10d %10.1f %10.3f %10.3f %10.3f %10.3f",
+                    e.getKey(), r.count, r.failures, r.count / seconds,
+                    r.percentile(50) / 1e6, r.percentile(99) / 1e6, r.percentile(99.9) / 1e6, r.percentile(100) / 1e6));
+        }
+    }
+
+    private static Map<String, Integer> equalWeights(Iterable<String> names) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String name : names) weights.put(name, 1);
+        return weights;
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for a card processor: answers after a random latency, declines a share of
+ * requests and fails another share transiently. Nothing leaves the machine.
+ *
+ * Test cards: 4000000000000002 is always declined, 4000000000000119 always fails transiently.
+ * Answers are remembered per transaction id, so a retry after an unknown outcome gets the same answer.
+ * A reversal replaces the answer with a decline.
+ */
+public class LocalPaymentProcessor implements PaymentProcessor {
+
+    static final String DECLINED_CARD = "4000000000000002";
+    static final String FAILING_CARD = "4000000000000119";
+
+    private final ScheduledExecutorService timer;
+    private final long minLatencyMillis;
+    private final long maxLatencyMillis;
+    private final double declineRate;
+    private final double transientFailureRate;
+    private final Map<String, Authorization> answered = new ConcurrentHashMap<>();
+
+    /** Same latency as the old simulated wait (0.7–1.6 s), 3% declines, 5% transient failures. */
+    public LocalPaymentProcessor() {
+        this(700, 1600, 0.03, 0.05);
+    }
+
+    public LocalPaymentProcessor(long minLatencyMillis, long maxLatencyMillis, double declineRate, double transientFailureRate) {
+        this.minLatencyMillis = minLatencyMillis;
+        this.maxLatencyMillis = Math.max(minLatencyMillis, maxLatencyMillis);
+        this.declineRate = declineRate;
+        this.transientFailureRate = transientFailureRate;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "payment-stub");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Authorization> authorize(AuthorizationRequest request) {
+        CompletableFuture<Authorization> result = new CompletableFuture<>();
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        long latency = minLatencyMillis + (maxLatencyMillis > minLatencyMillis ? rnd.nextLong(maxLatencyMillis - minLatencyMillis + 1) : 0);
+        double roll = rnd.nextDouble();
+        String authCode = String.format("%06d", rnd.nextInt(1_000_000));
+        // The answer is decided up front; the timer only delays delivering it, no thread waits
+        timer.schedule(() -> {
+            Authorization previous = answered.get(request.getTransactionId());
+            if (previous != null) {
+                result.complete(previous);
+            } else if (FAILING_CARD.equals(request.getCardNumber()) || roll < transientFailureRate) {
+                result.completeExceptionally(new TransientPaymentException("Процесорът не отговори."));
+            } else {
+                Authorization answer;
+                if (DECLINED_CARD.equals(request.getCardNumber()) || roll < transientFailureRate + declineRate) {
+                    answer = Authorization.declined(request.getTransactionId(), "Отказана от банката издател.");
+                } else {
+                    answer = Authorization.approved(request.getTransactionId(), authCode);
+                }
+                answered.put(request.getTransactionId(), answer);
+                result.complete(answer);
+            }
+        }, latency, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Void> reverse(String transactionId) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        // On the timer thread like the attempts: one already answered is overwritten, later ones find the decline
+        timer.schedule(() -> {
+            answered.put(transactionId, Authorization.declined(transactionId, "Авторизацията е отменена."));
+            result.complete(null);
+        }, minLatencyMillis, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+}
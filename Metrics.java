@@ -0,0 +1,231 @@
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Process-wide registry of counters, gauges and latency histograms, readable over JMX.
+ *
+ * Metrics are looked up by name once (typically into a static field) and then updated without
+ * locks or allocation. {@link #registerPlatformMBean()} publishes the registry as the MBean
+ * {@value #OBJECT_NAME}: a counter is one attribute, a gauge is one attribute, and a histogram
+ * {@code h} is {@code h.count}, {@code h.mean_ms}, {@code h.p50_ms}, {@code h.p90_ms},
+ * {@code h.p99_ms} and {@code h.max_ms}, so any JMX console can watch them.
+ */
+public class Metrics {
+
+    public static final String OBJECT_NAME = "CoffeeMachine:type=Metrics";
+    private static final Metrics DEFAULT = new Metrics();
+
+    public static Metrics getDefault() {
+        return DEFAULT;
+    }
+
+    public static class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long n) {
+            value.add(n);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Latency histogram in nanoseconds with log-linear buckets, as in HdrHistogram: every power of
+     * two is split into {@value #SUB_BUCKETS} equal buckets, so a value is known to within 1/16
+     * (about 6%) from nanoseconds to hours in under a thousand fixed counters. Recording is a few
+     * bit operations and atomic increments.
+     */
+    public static class Histogram {
+        private static final int SUB_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long nanos) {
+            long v = Math.max(0, nanos);
+            counts.incrementAndGet(bucketOf(v));
+            sum.add(v);
+            long m = max.get();
+            while (v > m && !max.compareAndSet(m, v)) m = max.get();
+        }
+
+        /** Record the time since {@code startNanos}, a {@link System#nanoTime()} reading. */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) n += counts.get(i);
+            return n;
+        }
+
+        public double getMeanNanos() {
+            long n = getCount();
+            return n == 0 ? 0 : (double) sum.sum() / n;
+        }
+
+        public long getMaxNanos() {
+            return max.get();
+        }
+
+        /**
+         * Value at this percentile (0-100): the upper end of the bucket holding it, capped at the
+         * largest value recorded. 0 when nothing was recorded.
+         */
+        public long getPercentileNanos(double percentile) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) return Math.min(upperBound(i), max.get());
+            }
+            return max.get();
+        }
+
+        static int bucketOf(long v) {
+            if (v < SUB_BUCKETS) return (int) v;
+            int exp = 63 - Long.numberOfLeadingZeros(v); // >= SUB_BITS
+            int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+            int exp = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            int sub = bucket % SUB_BUCKETS;
+            long width = 1L << (exp - SUB_BITS);
+            return ((long) (SUB_BUCKETS + sub) << (exp - SUB_BITS)) + width - 1;
+        }
+    }
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private boolean registered; // guarded by this
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /** A value read when asked for; registering the same name again replaces the supplier. */
+    public void gauge(String name, DoubleSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /** Publish this registry on the platform MBean server; later calls do nothing. */
+    public synchronized void registerPlatformMBean() {
+        if (registered) return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(new MBean(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // published by another registry in this JVM (tests, embedded use)
+        } catch (JMException e) {
+            System.err.println("Failed to register metrics MBean: " + e.getMessage());
+            return;
+        }
+        registered = true;
+    }
+
+    /** All current values by attribute name, as the MBean shows them. */
+    public Map<String, Object> values() {
+        Map<String, Object> values = new TreeMap<>();
+        counters.forEach((name, c) -> values.put(name, c.get()));
+        gauges.forEach((name, g) -> values.put(name, g.getAsDouble()));
+        histograms.forEach((name, h) -> {
+            values.put(name + ".count", h.getCount());
+            values.put(name + ".mean_ms", h.getMeanNanos() / 1e6);
+            values.put(name + ".p50_ms", h.getPercentileNanos(50) / 1e6);
+            values.put(name + ".p90_ms", h.getPercentileNanos(90) / 1e6);
+            values.put(name + ".p99_ms", h.getPercentileNanos(99) / 1e6);
+            values.put(name + ".max_ms", h.getMaxNanos() / 1e6);
+        });
+        return values;
+    }
+
+    /** Read-only MBean over the registry; its attributes follow the metrics registered so far. */
+    private class MBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object value = values().get(attribute);
+            if (value == null) throw new AttributeNotFoundException(attribute);
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Object> values = values();
+            AttributeList list = new AttributeList();
+            for (String a : attributes) {
+                if (values.containsKey(a)) list.add(new Attribute(a, values.get(a)));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Map.Entry<String, Object> e : values().entrySet()) {
+                attributes.add(new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(),
+                        e.getKey(), true, false, false));
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Coffee machine metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
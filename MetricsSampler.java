@@ -0,0 +1,181 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the order queue and the machine at a fixed rate into fixed-size ring buffers, for the
+ * operations dashboard.
+ *
+ * The order path only bumps the queue's counters; everything else (rates, averages, the inventory
+ * snapshot) is computed here once per period on a single background thread, so the cost does not
+ * depend on how many orders are placed. Each {@link Series} keeps the last {@code capacity} samples;
+ * all series share one sample numbering, so sample k of every series was taken at the same time.
+ */
+public class MetricsSampler {
+
+    /** Last samples of one metric. Missing values (e.g. no orders in a period) are NaN. */
+    public static class Series {
+        private final String name;
+        private final double[] values;
+        private long count; // samples ever added, including the NaN padding of a late series
+
+        Series(String name, int capacity, long start) {
+            this.name = name;
+            this.values = new double[capacity];
+            Arrays.fill(values, Double.NaN);
+            this.count = start;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        synchronized void add(double value) {
+            values[(int) (count % values.length)] = value;
+            count++;
+        }
+
+        /** Sample k of the shared numbering; NaN when it is missing or no longer held. */
+        public synchronized double get(long k) {
+            if (k < 0 || k >= count || k < count - values.length) return Double.NaN;
+            return values[(int) (k % values.length)];
+        }
+
+        /** Newest value, NaN if none. */
+        public synchronized double latest() {
+            return get(count - 1);
+        }
+
+        /** Largest value held, 0 if none. */
+        public synchronized double max() {
+            double max = 0;
+            for (double v : values) if (v > max) max = v;
+            return max;
+        }
+    }
+
+    private final CoffeeMachineSimulator.CoffeeMachine machine;
+    private final OrderQueue queue;
+    private final int capacity;
+    private final long periodMillis;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService timer;
+
+    private final Series ordersPerMinute;
+    private final Series averageLatency;
+    private final Series queueDepth;
+    private final Series cashRevenue;
+    private final Series cardRevenue;
+    private final Map<String, Series> ingredientLevels = new LinkedHashMap<>(); // guarded by this
+
+    private long samples; // guarded by this
+    // Sampler thread only
+    private long lastCompleted;
+    private long lastLatencyNanos;
+
+    /**
+     * @param capacity     samples kept per series
+     * @param periodMillis time between two samples
+     */
+    public MetricsSampler(CoffeeMachineSimulator.CoffeeMachine machine, OrderQueue queue, int capacity, long periodMillis) {
+        this.machine = machine;
+        this.queue = queue;
+        this.capacity = Math.max(2, capacity);
+        this.periodMillis = Math.max(1, periodMillis);
+        this.ordersPerMinute = new Series("Поръчки/мин", this.capacity, 0);
+        this.averageLatency = new Series("Средно време (ms)", this.capacity, 0);
+        this.queueDepth = new Series("Чакащи поръчки", this.capacity, 0);
+        this.cashRevenue = new Series("В брой", this.capacity, 0);
+        this.cardRevenue = new Series("Карта", this.capacity, 0);
+    }
+
+    /** Called on the sampler thread after every sample. */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void start() {
+        if (timer != null) return;
+        lastCompleted = queue.getCompletedOrders();
+        lastLatencyNanos = queue.getTotalLatencyNanos();
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(this::sample, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (timer != null) timer.shutdownNow();
+        timer = null;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    /** Samples taken so far; the newest one is number {@code getSampleCount() - 1}. */
+    public synchronized long getSampleCount() {
+        return samples;
+    }
+
+    public Series getOrdersPerMinute() { return ordersPerMinute; }
+    public Series getAverageLatency() { return averageLatency; }
+    public Series getQueueDepth() { return queueDepth; }
+    /** Cumulative revenue of cash orders since the queue was created. */
+    public Series getCashRevenue() { return cashRevenue; }
+    /** Cumulative revenue of card orders since the queue was created. */
+    public Series getCardRevenue() { return cardRevenue; }
+
+    /** One series per ingredient, in the order the ingredients were first seen. */
+    public synchronized List<Series> getIngredientLevels() {
+        return new ArrayList<>(ingredientLevels.values());
+    }
+
+    private void sample() {
+        try {
+            // read everything first, so a failure leaves no series a sample ahead of the others
+            long completed = queue.getCompletedOrders();
+            long latency = queue.getTotalLatencyNanos();
+            int depth = queue.size();
+            double cash = queue.getRevenue("CASH");
+            double card = queue.getRevenue("CARD");
+            Map<String, Integer> inventory = new TreeMap<>(machine.getInventorySnapshot());
+
+            long orders = completed - lastCompleted;
+            ordersPerMinute.add(orders * 60_000.0 / periodMillis);
+            averageLatency.add(orders > 0 ? (latency - lastLatencyNanos) / 1e6 / orders : Double.NaN);
+            lastCompleted = completed;
+            lastLatencyNanos = latency;
+            queueDepth.add(depth);
+            cashRevenue.add(cash);
+            cardRevenue.add(card);
+            synchronized (this) {
+                for (Map.Entry<String, Integer> e : inventory.entrySet()) {
+                    ingredientLevels.computeIfAbsent(e.getKey(), name -> new Series(name, capacity, samples)).add(e.getValue());
+                }
+                for (Series s : ingredientLevels.values()) {
+                    if (!inventory.containsKey(s.getName())) s.add(Double.NaN);
+                }
+                samples++;
+            }
+        } catch (RuntimeException e) {
+            // a failed sample must not cancel the schedule
+            System.err.println("Metrics sample failed: " + e);
+            return;
+        }
+        for (Runnable l : listeners) l.run();
+    }
+}
@@ -0,0 +1,403 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded HTTP ordering API for kiosks and pickup screens. Every endpoint delegates to a shared
+ * {@link CoffeeMachineSimulator.CoffeeMachine}; responses are JSON (UTF-8).
+ *
+ *   GET  /menu                         menu with prices and availability
+ *   GET  /availability?drinks=A,B,B    can the machine make this order now, and how long it would take
+ *   POST /order  drinks=A,B&paid=10.00 place an order through the shared {@link OrderQueue}
+ *   GET  /inventory                    stock levels, cash and profit
+ *   GET  /report?recent=10             sales totals, top drinks and recent sales
+ *
+ * Requests run one per virtual thread when the JVM supports them (JDK 21+), otherwise on a cached
+ * pool. Idle keep-alive connections are parked in the server's selector and hold no thread.
+ */
+public class OrderHttpServer {
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final int MAX_BODY_BYTES = 16 * 1024;
+    // How long an order may wait for space in a full queue before we answer 503
+    private static final long QUEUE_WAIT_MILLIS = 2000;
+    private static final DateTimeFormatter TS_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final CoffeeMachineSimulator.CoffeeMachine machine;
+    private final OrderQueue orders;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public OrderHttpServer(CoffeeMachineSimulator.CoffeeMachine machine, OrderQueue orders, InetSocketAddress address) throws IOException {
+        this.machine = machine;
+        this.orders = orders;
+        this.server = HttpServer.create(address, 0);
+        this.executor = newPerRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/menu", get(this::handleMenu));
+        server.createContext("/availability", get(this::handleAvailability));
+        server.createContext("/order", this::handleOrder);
+        server.createContext("/inventory", get(this::handleInventory));
+        server.createContext("/report", get(this::handleReport));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    /** Actual bound address (useful when started on port 0). */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * One virtual thread per task where available; platform threads otherwise.
+     */
+    static ExecutorService newPerRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    // ---------------- Handlers ----------------
+
+    private void handleMenu(HttpExchange ex) throws IOException {
+        StringBuilder sb = new StringBuilder("[");
+        synchronized (machine) {
+            List<String> names = new ArrayList<>(machine.getMenu().keySet());
+            Collections.sort(names);
+            boolean first = true;
+            for (String name : names) {
+                CoffeeMachineSimulator.Drink d = machine.getMenu().get(name);
+                if (!first) sb.append(",");
+                sb.append("{\"name\":").append(jsonString(name));
+                sb.append(",\"price\":").append(money(d.getPrice()));
+                sb.append(",\"available\":").append(machine.hasIngredientsFor(Collections.singletonList(name)));
+                sb.append(",\"ingredients\":").append(jsonIntMap(d.getIngredients()));
+                sb.append("}");
+                first = false;
+            }
+        }
+        sb.append("]");
+        send(ex, 200, sb.toString());
+    }
+
+    private void handleAvailability(HttpExchange ex) throws IOException {
+        List<String> drinks = drinkList(queryParams(ex).get("drinks"));
+        if (drinks.isEmpty()) {
+            sendError(ex, 400, "Параметърът 'drinks' е задължителен.");
+            return;
+        }
+        String unknown = firstUnknown(drinks);
+        if (unknown != null) {
+            sendError(ex, 404, "Напитката не е в менюто: " + unknown);
+            return;
+        }
+        boolean available = machine.hasIngredientsFor(drinks);
+        double eta = orders.estimateReadyMillis(drinks) / 1000.0;
+        send(ex, 200, "{\"available\":" + available + ",\"total\":" + money(priceOf(drinks))
+                + ",\"estimatedSeconds\":" + String.format(Locale.ROOT, "%.1f", eta) + "}");
+    }
+
+    private void handleOrder(HttpExchange ex) throws IOException {
+        if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) {
+            ex.getResponseHeaders().set("Allow", "POST");
+            sendError(ex, 405, "Използвайте POST.");
+            return;
+        }
+        Map<String, String> params = queryParams(ex);
+        params.putAll(formParams(ex));
+        List<String> drinks = drinkList(params.get("drinks"));
+        if (drinks.isEmpty()) {
+            sendError(ex, 400, "Параметърът 'drinks' е задължителен.");
+            return;
+        }
+        String unknown = firstUnknown(drinks);
+        if (unknown != null) {
+            sendError(ex, 404, "Напитката не е в менюто: " + unknown);
+            return;
+        }
+        double total = priceOf(drinks);
+        double paid = total;
+        if (params.containsKey("paid")) {
+            try {
+                paid = Double.parseDouble(params.get("paid").replace(',', '.'));
+                // NaN would pass the comparison below and end up in the JSON answer and the logs
+                if (!Double.isFinite(paid)) throw new NumberFormatException();
+            } catch (NumberFormatException e) {
+                sendError(ex, 400, "Невалидна сума: " + params.get("paid"));
+                return;
+            }
+        }
+        if (paid < total) {
+            sendError(ex, 402, String.format(Locale.ROOT, "Недостатъчно пари. Нужни са %.2f лв.", total));
+            return;
+        }
+        OrderQueue.OrderRequest request = new OrderQueue.OrderRequest(drinks, total, paid, "CASH", null,
+                TransactionIdGenerator.getDefault().next(), LocalDateTime.now().format(TS_FMT));
+        OrderQueue.OrderResult result;
+        try {
+            // Blocking is cheap here: each request has its own (virtual) thread
+            result = orders.submit(request, QUEUE_WAIT_MILLIS, TimeUnit.MILLISECONDS).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendError(ex, 503, "Заявката е прекъсната.");
+            return;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                ex.getResponseHeaders().set("Retry-After", "1");
+                sendError(ex, 503, e.getCause().getMessage());
+            } else {
+                sendError(ex, 500, "Грешка при приготвяне: " + e.getCause().getMessage());
+            }
+            return;
+        }
+        if (!result.isAccepted()) {
+            sendError(ex, 409, "Недостатъчно съставки за поръчката.");
+            return;
+        }
+        StringBuilder sb = new StringBuilder("{\"ok\":true,\"txid\":");
+        sb.append(jsonString(request.getTransactionId())).append(",\"drinks\":[");
+        for (int i = 0; i < drinks.size(); i++) {
+            if (i > 0) sb.append(",");
+            sb.append(jsonString(drinks.get(i)));
+        }
+        sb.append("],\"total\":").append(money(total));
+        sb.append(",\"paid\":").append(money(paid));
+        sb.append(",\"change\":").append(money(paid - total));
+        sb.append("}");
+        send(ex, 200, sb.toString());
+    }
+
+    private void handleInventory(HttpExchange ex) throws IOException {
+        StringBuilder sb = new StringBuilder("{\"inventory\":");
+        synchronized (machine) {
+            sb.append(jsonIntMap(machine.getInventory()));
+            sb.append(",\"cash\":").append(money(machine.getCashAmount()));
+            sb.append(",\"totalProfit\":").append(money(machine.getTotalProfitAmount()));
+        }
+        sb.append("}");
+        send(ex, 200, sb.toString());
+    }
+
+    private void handleReport(HttpExchange ex) throws IOException {
+        int recent = 10;
+        String recentParam = queryParams(ex).get("recent");
+        if (recentParam != null) {
+            try {
+                recent = Math.max(0, Math.min(1000, Integer.parseInt(recentParam)));
+            } catch (NumberFormatException e) {
+                sendError(ex, 400, "Невалиден параметър 'recent'.");
+                return;
+            }
+        }
+        StringBuilder sb = new StringBuilder("{");
+        synchronized (machine) {
+            sb.append("\"sales\":").append(machine.getSalesCount());
+            sb.append(",\"cash\":").append(money(machine.getCashAmount()));
+            sb.append(",\"totalProfit\":").append(money(machine.getTotalProfitAmount()));
+            sb.append(",\"recent\":[");
+            List<CoffeeMachineSimulator.SaleLog> sales = machine.getRecentSales(recent);
+            for (int i = sales.size() - 1; i >= 0; i--) {
+                CoffeeMachineSimulator.SaleLog log = sales.get(i);
+                if (i < sales.size() - 1) sb.append(",");
+                sb.append("{\"name\":").append(jsonString(log.getDrinkName()));
+                sb.append(",\"price\":").append(money(log.getPrice()));
+                sb.append(",\"profit\":").append(money(log.getProfit()));
+                sb.append(",\"time\":").append(jsonString(log.getTimestamp()));
+                sb.append("}");
+            }
+            sb.append("]");
+        }
+        sb.append("}");
+        send(ex, 200, sb.toString());
+    }
+
+    // ---------------- Helpers ----------------
+
+    private interface Handler {
+        void handle(HttpExchange ex) throws IOException;
+    }
+
+    private static HttpHandler get(Handler handler) {
+        return ex -> {
+            if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) {
+                ex.getResponseHeaders().set("Allow", "GET");
+                sendError(ex, 405, "Използвайте GET.");
+                return;
+            }
+            handler.handle(ex);
+        };
+    }
+
+    private String firstUnknown(List<String> drinks) {
+        Map<String, CoffeeMachineSimulator.Drink> menu = machine.getMenu();
+        synchronized (machine) {
+            for (String name : drinks) {
+                if (!menu.containsKey(name)) return name;
+            }
+        }
+        return null;
+    }
+
+    private double priceOf(List<String> drinks) {
+        double total = 0.0;
+        synchronized (machine) {
+            for (String name : drinks) {
+                CoffeeMachineSimulator.Drink d = machine.getMenu().get(name);
+                if (d != null) total += d.getPrice();
+            }
+        }
+        return total;
+    }
+
+    private static List<String> drinkList(String spec) {
+        List<String> drinks = new ArrayList<>();
+        if (spec == null) return drinks;
+        for (String name : spec.split(",")) {
+            name = name.trim();
+            if (!name.isEmpty()) drinks.add(name);
+        }
+        return drinks;
+    }
+
+    private static Map<String, String> queryParams(HttpExchange ex) {
+        return parseParams(ex.getRequestURI().getRawQuery());
+    }
+
+    private static Map<String, String> formParams(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES);
+            return parseParams(new String(body, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Map<String, String> parseParams(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null || raw.isEmpty()) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static void sendError(HttpExchange ex, int status, String message) throws IOException {
+        send(ex, status, "{\"ok\":false,\"error\":" + jsonString(message) + "}");
+    }
+
+    private static void send(HttpExchange ex, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    static String money(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    static String jsonString(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append("\"").toString();
+    }
+
+    private static String jsonIntMap(Map<String, Integer> map) {
+        Map<String, Integer> sorted = new LinkedHashMap<>();
+        List<String> keys = new ArrayList<>(map.keySet());
+        Collections.sort(keys);
+        for (String k : keys) sorted.put(k, map.get(k));
+        StringBuilder sb = new StringBuilder("{");
+        boolean first = true;
+        for (Map.Entry<String, Integer> e : sorted.entrySet()) {
+            if (!first) sb.append(",");
+            sb.append(jsonString(e.getKey())).append(":").append(e.getValue());
+            first = false;
+        }
+        return sb.append("}").toString();
+    }
+
+    // ---------------- Main ----------------
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        String bind = "127.0.0.1";
+        File dataDir = new File(".");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[i + 1]); break;
+                case "--bind": bind = args[i + 1]; break;
+                case "--dir": dataDir = new File(args[i + 1]); break;
+                default:
+                    System.out.println("❌ Непознат аргумент: " + args[i]);
+                    System.out.println("Употреба: java OrderHttpServer [--port 8080] [--bind 127.0.0.1] [--dir .]");
+                    return;
+            }
+        }
+        CoffeeMachineSimulator.CoffeeMachine machine = new CoffeeMachineSimulator.CoffeeMachine(dataDir);
+        OrderQueue orders = new OrderQueue(machine, new SalesCsvLog(new File(dataDir, SalesCsvLog.DEFAULT_FILE)), 256, 32);
+        orders.setBrewScheduler(new BrewScheduler(), BrewScheduler.SIMULATOR_TIME_SCALE);
+        RequestLog requestLog = new RequestLog(new File(dataDir, RequestLog.DEFAULT_FILE), machine.getClock());
+        orders.setRequestLog(requestLog);
+        machine.addEventListener(requestLog);
+        orders.start();
+        Metrics.getDefault().gauge("orders.queueDepth", orders::size);
+        Metrics.getDefault().registerPlatformMBean();
+        OrderHttpServer server = new OrderHttpServer(machine, orders, new InetSocketAddress(bind, port));
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            orders.stop();
+            requestLog.close();
+            machine.close();
+        }));
+        System.out.println("✅ HTTP API слуша на http://" + bind + ":" + server.getAddress().getPort() + "/menu");
+    }
+}
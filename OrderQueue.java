@@ -0,0 +1,326 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded order intake shared by all front-ends (Swing UI, HTTP API, load generator).
+ *
+ * A single brewing thread drains the queue in batches: the whole batch is validated against the
+ * inventory in one pass ({@link CoffeeMachineSimulator.CoffeeMachine#makeOrders}), which also
+ * group-commits the sales to the journal, and the accepted orders are written to the sales CSV
+ * with one flush. Each submitted order gets a future that completes with its {@link OrderResult}
+ * once its batch has been prepared.
+ *
+ * Completed orders, their latency (submit to completion) and revenue per payment method are
+ * counted as they complete, for monitoring ({@link MetricsSampler}).
+ */
+public class OrderQueue {
+
+    public static class OrderRequest {
+        final List<String> drinks;
+        final double total;
+        final double paid;
+        final String method;
+        final String cardLast4;
+        final String transactionId;
+        final String timestamp;
+
+        public OrderRequest(List<String> drinks, double total, double paid, String method,
+                            String cardLast4, String transactionId, String timestamp) {
+            this.drinks = Collections.unmodifiableList(new ArrayList<>(drinks));
+            this.total = total;
+            this.paid = paid;
+            this.method = method;
+            this.cardLast4 = cardLast4;
+            this.transactionId = transactionId;
+            this.timestamp = timestamp;
+        }
+
+        public List<String> getDrinks() { return drinks; }
+        public double getTotal() { return total; }
+        public double getPaid() { return paid; }
+        public double getChange() { return paid - total; }
+        public String getMethod() { return method; }
+        public String getCardLast4() { return cardLast4; }
+        public String getTransactionId() { return transactionId; }
+        public String getTimestamp() { return timestamp; }
+    }
+
+    public static class OrderResult {
+        private final OrderRequest request;
+        private final boolean accepted;
+        private final double profit;
+        private final int batchSize;
+
+        OrderResult(OrderRequest request, boolean accepted, double profit, int batchSize) {
+            this.request = request;
+            this.accepted = accepted;
+            this.profit = profit;
+            this.batchSize = batchSize;
+        }
+
+        public OrderRequest getRequest() { return request; }
+        /**
+         * False when the ingredients ran out before this order's turn; nothing was sold and the
+         * caller gives the payment back.
+         */
+        public boolean isAccepted() { return accepted; }
+        public double getProfit() { return profit; }
+        /** Number of orders brewed together with this one. */
+        public int getBatchSize() { return batchSize; }
+    }
+
+    private static class Pending {
+        final OrderRequest request;
+        final CompletableFuture<OrderResult> future = new CompletableFuture<>();
+        final long submittedNanos = System.nanoTime();
+
+        Pending(OrderRequest request) {
+            this.request = request;
+        }
+    }
+
+    private final CoffeeMachineSimulator.CoffeeMachine machine;
+    private final SalesCsvLog salesLog;
+    private final BlockingQueue<Pending> queue;
+    private final int maxBatch;
+    private volatile BrewScheduler scheduler;
+    private volatile double timeScale;
+    private volatile RequestLog requestLog;
+    private Thread brewer;
+    private volatile boolean running;
+    private volatile long brewingUntilNanos = System.nanoTime(); // end of the batch being brewed; past when idle
+
+    // Monitoring counters, updated by the brewing thread
+    private final LongAdder completedOrders = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final Map<String, LongAdder> revenueCents = new ConcurrentHashMap<>();
+
+    /**
+     * @param salesLog  CSV sink for accepted orders, or null to skip CSV logging
+     * @param capacity  maximum number of orders waiting to be brewed
+     * @param maxBatch  maximum number of orders brewed together
+     */
+    public OrderQueue(CoffeeMachineSimulator.CoffeeMachine machine, SalesCsvLog salesLog, int capacity, int maxBatch) {
+        this.machine = machine;
+        this.salesLog = salesLog;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = Math.max(1, maxBatch);
+    }
+
+    /**
+     * Simulate preparation: each batch waits for the makespan of its brewing schedule multiplied by
+     * timeScale (1.0 = real machine time). No scheduler (the default) means no waiting.
+     */
+    public void setBrewScheduler(BrewScheduler scheduler, double timeScale) {
+        this.scheduler = scheduler;
+        this.timeScale = timeScale;
+    }
+
+    public BrewScheduler getBrewScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Capture every submitted order (including ones rejected because the queue is full). Null to stop.
+     */
+    public void setRequestLog(RequestLog requestLog) {
+        this.requestLog = requestLog;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        brewer = new Thread(this::brewLoop, "brewing-loop");
+        brewer.setDaemon(true);
+        brewer.start();
+    }
+
+    /**
+     * Stop the brewing loop. Orders still waiting in the queue fail with RejectedExecutionException;
+     * a batch already being brewed is sold and logged, so it completes normally.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (brewer != null) brewer.interrupt();
+        List<Pending> left = new ArrayList<>();
+        queue.drainTo(left);
+        for (Pending p : left) p.future.completeExceptionally(new RejectedExecutionException("Опашката е спряна."));
+    }
+
+    /** Orders waiting to be brewed. */
+    public int size() {
+        return queue.size();
+    }
+
+    /** Accepted orders completed since the queue was created. */
+    public long getCompletedOrders() {
+        return completedOrders.sum();
+    }
+
+    /** Sum of submit-to-completion times of the accepted orders, in nanoseconds. */
+    public long getTotalLatencyNanos() {
+        return latencyNanos.sum();
+    }
+
+    /** Revenue of the accepted orders paid with this method ("CASH", "CARD"). */
+    public double getRevenue(String method) {
+        LongAdder cents = revenueCents.get(method);
+        return cents != null ? cents.sum() / 100.0 : 0.0;
+    }
+
+    /**
+     * Enqueue without waiting. When the queue is full the returned future has already failed
+     * with {@link RejectedExecutionException}.
+     */
+    public CompletableFuture<OrderResult> submit(OrderRequest request) {
+        RequestLog log = requestLog;
+        if (log != null) log.recordOrder(request);
+        Pending p = new Pending(request);
+        if (!running || !queue.offer(p)) {
+            p.future.completeExceptionally(new RejectedExecutionException("Опашката за поръчки е пълна."));
+        }
+        return p.future;
+    }
+
+    /**
+     * Enqueue, waiting up to the given time for space (backpressure for callers that can block).
+     */
+    public CompletableFuture<OrderResult> submit(OrderRequest request, long timeout, TimeUnit unit) throws InterruptedException {
+        RequestLog log = requestLog;
+        if (log != null) log.recordOrder(request);
+        Pending p = new Pending(request);
+        if (!running || !queue.offer(p, timeout, unit)) {
+            p.future.completeExceptionally(new RejectedExecutionException("Опашката за поръчки е пълна."));
+        }
+        return p.future;
+    }
+
+    private void brewLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatch - 1);
+                brewBatch(batch);
+            } catch (InterruptedException e) {
+                for (Pending p : batch) p.future.completeExceptionally(new RejectedExecutionException("Опашката е спряна."));
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                for (Pending p : batch) p.future.completeExceptionally(e);
+            }
+            batch.clear();
+        }
+    }
+
+    private void brewBatch(List<Pending> batch) {
+        List<List<String>> orders = new ArrayList<>(batch.size());
+        for (Pending p : batch) orders.add(p.request.drinks);
+
+        boolean[] accepted = machine.makeOrders(orders);
+
+        List<SalesCsvLog.Row> rows = new ArrayList<>();
+        double[] profits = new double[batch.size()];
+        List<String> cups = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (!accepted[i]) continue;
+            OrderRequest r = batch.get(i).request;
+            double cost = 0.0;
+            for (String name : r.drinks) cost += machine.getDrinkCost(name);
+            profits[i] = r.total - cost;
+            cups.addAll(r.drinks);
+            rows.add(new SalesCsvLog.Row(r.timestamp, r.transactionId, r.drinks, r.total, r.paid, r.getChange(),
+                    r.method, r.cardLast4, profits[i]));
+        }
+        if (salesLog != null && !rows.isEmpty()) {
+            try {
+                salesLog.appendAll(rows);
+            } catch (IOException e) {
+                // No receipt for a sale the log does not have: take the sales back and fail the orders
+                System.err.println("Failed to write transaction CSV: " + e.getMessage());
+                failUnrecorded(batch, accepted, profits, e);
+                return;
+            }
+        }
+
+        BrewScheduler s = scheduler;
+        if (s != null && !cups.isEmpty()) {
+            long makespan = s.estimateMillis(toDrinks(cups));
+            long delay = Math.round(makespan * timeScale);
+            if (delay > 0) {
+                brewingUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    // Stopped mid-brew: the sales are already journaled and logged, so hand the cups out
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        long now = System.nanoTime();
+        for (int i = 0; i < batch.size(); i++) {
+            Pending p = batch.get(i);
+            if (accepted[i]) {
+                completedOrders.increment();
+                latencyNanos.add(now - p.submittedNanos);
+                String method = p.request.method != null ? p.request.method : "-";
+                revenueCents.computeIfAbsent(method, m -> new LongAdder()).add(Math.round(p.request.total * 100));
+            }
+            p.future.complete(new OrderResult(p.request, accepted[i], profits[i], batch.size()));
+        }
+    }
+
+    /**
+     * The batch's sales were made but could not be logged: refund them in the machine (cash and
+     * profit go back; the ingredients stay used) and complete the orders exceptionally, so callers
+     * give the payments back instead of printing receipts. A sale the till cannot cover stays in
+     * the machine's cash and profit; the failure message says so.
+     */
+    private void failUnrecorded(List<Pending> batch, boolean[] accepted, double[] profits, IOException cause) {
+        for (int i = 0; i < batch.size(); i++) {
+            Pending p = batch.get(i);
+            if (!accepted[i]) {
+                p.future.complete(new OrderResult(p.request, false, 0.0, batch.size()));
+                continue;
+            }
+            String message = "Продажбата не може да бъде записана в дневника на продажбите: " + cause.getMessage();
+            if (!machine.refund(p.request.transactionId, p.request.total, profits[i])) {
+                message += String.format(" Сумата от %.2f лв. (транзакция %s) не е изтеглена от касата.",
+                        p.request.total, p.request.transactionId);
+                System.err.println("Unlogged sale " + p.request.transactionId + " could not be refunded in the machine");
+            }
+            p.future.completeExceptionally(new IllegalStateException(message, cause));
+        }
+    }
+
+    /**
+     * Estimated time until an order of these drinks would be ready if submitted now: what is left of
+     * the batch being brewed, then the schedule of everything still waiting plus this order, in the
+     * same time scale as the simulated preparation. Zero when no scheduler is set.
+     */
+    public long estimateReadyMillis(List<String> drinks) {
+        BrewScheduler s = scheduler;
+        if (s == null) return 0;
+        long brewingLeft = Math.max(0, TimeUnit.NANOSECONDS.toMillis(brewingUntilNanos - System.nanoTime()));
+        List<String> cups = new ArrayList<>();
+        for (Pending p : queue) cups.addAll(p.request.drinks);
+        cups.addAll(drinks);
+        return brewingLeft + Math.round(s.estimateMillis(toDrinks(cups)) * timeScale);
+    }
+
+    private List<CoffeeMachineSimulator.Drink> toDrinks(List<String> names) {
+        // Under the machine lock: the menu is edited on the EDT while this runs on other threads
+        return machine.getDrinks(names);
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous payment stage in front of a {@link PaymentProcessor}: every attempt gets a timeout,
+ * timeouts and transient failures are retried with exponential backoff, declines are returned as
+ * they are. Nothing blocks; the returned future completes on the processor's or the pipeline's thread.
+ */
+public class PaymentPipeline {
+
+    private final PaymentProcessor processor;
+    private final long attemptTimeoutMillis;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final ScheduledExecutorService retryTimer;
+
+    /**
+     * @param attemptTimeoutMillis how long one attempt may take before it counts as failed
+     * @param maxAttempts          total attempts including the first
+     * @param backoffMillis        wait before the first retry; doubled for every further retry
+     */
+    public PaymentPipeline(PaymentProcessor processor, long attemptTimeoutMillis, int maxAttempts, long backoffMillis) {
+        this.processor = processor;
+        this.attemptTimeoutMillis = attemptTimeoutMillis;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMillis = backoffMillis;
+        this.retryTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "payment-retry");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Authorize; the future fails with {@link PaymentProcessor.TransientPaymentException} when every
+     * attempt timed out or failed.
+     */
+    public CompletableFuture<PaymentProcessor.Authorization> authorize(PaymentProcessor.AuthorizationRequest request) {
+        CompletableFuture<Attempt<PaymentProcessor.Authorization>> result = new CompletableFuture<>();
+        attempt(() -> processor.authorize(request), 1, result);
+        return result.thenApply(answer -> answer.value.withAttempts(answer.attempt));
+    }
+
+    /**
+     * Reverse the authorization of a transaction, with the same timeouts and retries; the future
+     * fails with {@link PaymentProcessor.TransientPaymentException} when no attempt got through.
+     */
+    public CompletableFuture<Void> reverse(String transactionId) {
+        CompletableFuture<Attempt<Void>> result = new CompletableFuture<>();
+        attempt(() -> processor.reverse(transactionId), 1, result);
+        return result.thenApply(answer -> null);
+    }
+
+    /** Answer of a call and the attempt that got it. */
+    private static class Attempt<T> {
+        final T value;
+        final int attempt;
+
+        Attempt(T value, int attempt) {
+            this.value = value;
+            this.attempt = attempt;
+        }
+    }
+
+    private <T> void attempt(Supplier<CompletableFuture<T>> request, int attempt, CompletableFuture<Attempt<T>> result) {
+        CompletableFuture<T> call;
+        try {
+            call = request.get();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.orTimeout(attemptTimeoutMillis, TimeUnit.MILLISECONDS).whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(new Attempt<>(value, attempt));
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            boolean retryable = cause instanceof TimeoutException || cause instanceof PaymentProcessor.TransientPaymentException;
+            if (!retryable) {
+                result.completeExceptionally(cause);
+            } else if (attempt >= maxAttempts) {
+                result.completeExceptionally(new PaymentProcessor.TransientPaymentException(
+                        "Няма отговор от платежния процесор след " + attempt + " опита."));
+            } else {
+                long delay = backoffMillis << (attempt - 1);
+                retryTimer.schedule(() -> attempt(request, attempt + 1, result), delay, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    public void shutdown() {
+        retryTimer.shutdownNow();
+    }
+}
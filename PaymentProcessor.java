@@ -0,0 +1,90 @@
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Card payment authorization. Implementations must not block the caller: the returned future
+ * completes when the processor answers, so several kiosks can authorize at the same time.
+ *
+ * A decline completes the future normally with {@link Authorization#isApproved()} false. A
+ * {@link TransientPaymentException} means the answer is unknown (network, processor busy) and the
+ * request may be retried; {@link PaymentPipeline} does that with timeouts.
+ */
+public interface PaymentProcessor {
+
+    CompletableFuture<Authorization> authorize(AuthorizationRequest request);
+
+    /**
+     * Reverse (void) the authorization of this transaction, e.g. when the paid order could not be
+     * made. Works by transaction id, so it also covers an attempt whose answer never arrived: an
+     * approval that comes later is reversed as well, and further attempts are declined. Reversing a
+     * transaction that was never approved does nothing.
+     */
+    CompletableFuture<Void> reverse(String transactionId);
+
+    class AuthorizationRequest {
+        final String transactionId;
+        final double amount;
+        final String cardNumber;
+        final String cardHolder;
+
+        public AuthorizationRequest(String transactionId, double amount, String cardNumber, String cardHolder) {
+            this.transactionId = transactionId;
+            this.amount = amount;
+            this.cardNumber = cardNumber;
+            this.cardHolder = cardHolder;
+        }
+
+        /** Idempotency key: retries of the same request reuse it. */
+        public String getTransactionId() { return transactionId; }
+        public double getAmount() { return amount; }
+        public String getCardNumber() { return cardNumber; }
+        public String getCardHolder() { return cardHolder; }
+
+        public String getCardLast4() {
+            return cardNumber.length() >= 4 ? cardNumber.substring(cardNumber.length() - 4) : cardNumber;
+        }
+    }
+
+    class Authorization {
+        private final String transactionId;
+        private final boolean approved;
+        private final String authCode;
+        private final String declineReason;
+        private final int attempts;
+
+        Authorization(String transactionId, boolean approved, String authCode, String declineReason, int attempts) {
+            this.transactionId = transactionId;
+            this.approved = approved;
+            this.authCode = authCode;
+            this.declineReason = declineReason;
+            this.attempts = attempts;
+        }
+
+        public static Authorization approved(String transactionId, String authCode) {
+            return new Authorization(transactionId, true, authCode, null, 1);
+        }
+
+        public static Authorization declined(String transactionId, String reason) {
+            return new Authorization(transactionId, false, null, reason, 1);
+        }
+
+        Authorization withAttempts(int attempts) {
+            return new Authorization(transactionId, approved, authCode, declineReason, attempts);
+        }
+
+        public String getTransactionId() { return transactionId; }
+        public boolean isApproved() { return approved; }
+        public String getAuthCode() { return authCode; }
+        public String getDeclineReason() { return declineReason; }
+        /** Number of tries it took to get this answer. */
+        public int getAttempts() { return attempts; }
+    }
+
+    /** The processor could not give an answer; safe to retry with the same transaction id. */
+    class TransientPaymentException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public TransientPaymentException(String message) {
+            super(message);
+        }
+    }
+}
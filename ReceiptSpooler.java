@@ -0,0 +1,258 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Writes receipts in the background, so that producing a receipt never holds up the next order.
+ *
+ * {@link #submit} only enqueues the receipt's data. A single spooler thread takes whatever has
+ * queued up, renders it with a {@link Template} whose fixed parts were built once, and appends the
+ * batch with one write to the file of the shift the receipts belong to:
+ * {@code receipts/<yyyy-MM-dd>/shift-<HH>.txt}, HH being the hour the shift started. Each receipt
+ * then goes to the optional {@link Printer}. Receipts still queued at {@link #stop} are written
+ * before it returns.
+ */
+public class ReceiptSpooler {
+
+    public static final String DEFAULT_DIR = "receipts";
+    private static final int MAX_BATCH = 64;
+    private static final DateTimeFormatter TS_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /** One line of a receipt: a drink, how many, and their price together. */
+    public static class Line {
+        final String name;
+        final int quantity;
+        final double amount;
+
+        public Line(String name, int quantity, double amount) {
+            this.name = name;
+            this.quantity = quantity;
+            this.amount = amount;
+        }
+    }
+
+    /** Data of one receipt; rendered to text by the spooler thread. */
+    public static class Receipt {
+        final String timestamp;
+        final String transactionId;
+        final List<Line> lines;
+        final double total;
+        final double paid;
+        final double change;
+        final String method;
+        final String cardLast4;
+
+        /** @param timestamp "yyyy-MM-dd HH:mm:ss"; also decides the shift file */
+        public Receipt(String timestamp, String transactionId, List<Line> lines, double total, double paid,
+                       double change, String method, String cardLast4) {
+            this.timestamp = timestamp != null ? timestamp : LocalDateTime.now().format(TS_FMT);
+            this.transactionId = transactionId;
+            this.lines = Collections.unmodifiableList(new ArrayList<>(lines));
+            this.total = total;
+            this.paid = paid;
+            this.change = change;
+            this.method = method;
+            this.cardLast4 = cardLast4;
+        }
+
+        public String getTransactionId() { return transactionId; }
+        public String getTimestamp() { return timestamp; }
+    }
+
+    /** Receipt layout. The header and footer are built once; a receipt only formats its own lines. */
+    public static class Template {
+        private static final String RULE = "------------------------------------\n";
+        private final String header;
+        private final String footer;
+
+        public Template(List<String> merchantLines) {
+            StringBuilder sb = new StringBuilder("====== Coffee Machine Receipt ======\n");
+            for (String line : merchantLines) sb.append(line).append('\n');
+            this.header = sb.toString();
+            this.footer = RULE + "Благодарим Ви! Посетете ни пак.\n" + "====================================\n";
+        }
+
+        /** The machine's own merchant details. */
+        public static Template standard() {
+            return new Template(List.of(
+                    "Търговец: ЕТ КРУМ КРУМОВ",
+                    "Адрес: ул. Стефан Сливков 7, град Стара Загора",
+                    "Тел: +359 2 123 456"));
+        }
+
+        public String render(Receipt r) {
+            StringBuilder sb = new StringBuilder(header.length() + footer.length() + 160 + 40 * r.lines.size());
+            sb.append(header);
+            sb.append(String.format("Дата/час: %s\n", r.timestamp));
+            sb.append(String.format("Транзакция ID: %s\n", r.transactionId != null ? r.transactionId : "-"));
+            sb.append(RULE);
+            for (Line line : r.lines) {
+                sb.append(String.format("%-20s x%2d  %6.2f лв.\n", line.name, line.quantity, line.amount));
+            }
+            sb.append(RULE);
+            sb.append(String.format("Обща цена:           %8.2f лв.\n", r.total));
+            if (r.method != null) {
+                String methodLabel = "Неизвестен";
+                String symbol = "";
+                if ("CASH".equals(r.method)) { methodLabel = "В брой (Cash)"; symbol = "💵"; }
+                else if ("CARD".equals(r.method)) { methodLabel = "С карта (Card)"; symbol = "💳"; }
+                sb.append(String.format("Платено (%s):       %8.2f лв.\n", methodLabel + " " + symbol, r.paid));
+                sb.append(String.format("Ресто:               %8.2f лв.\n", r.change));
+                if (r.cardLast4 != null) sb.append(String.format("Детайли карта:      ▪▪▪▪ %s\n", r.cardLast4));
+            }
+            sb.append(footer);
+            return sb.toString();
+        }
+    }
+
+    /** Receipt printer. Called on the spooler thread, one receipt at a time. */
+    public interface Printer {
+        void print(String receiptText) throws IOException;
+    }
+
+    /** Stand-in for a local receipt printer: prints to the console what the printer would get. */
+    public static class ConsolePrinter implements Printer {
+        @Override
+        public void print(String receiptText) {
+            System.out.print("🖨️ Печат на квитанция:\n" + receiptText);
+        }
+    }
+
+    private final File dir;
+    private final Template template;
+    private final Printer printer;
+    private final int shiftHours;
+    private final BlockingQueue<Receipt> queue = new LinkedBlockingQueue<>();
+    // Queued by stop() after the last receipt. No interrupt: it would close the file channel mid-write
+    private final Receipt stopMarker = new Receipt(null, null, List.of(), 0, 0, 0, null, null);
+    private Thread worker;
+    private volatile boolean running;
+
+    /**
+     * @param printer    also print every receipt, or null
+     * @param shiftHours length of a shift; shifts start at midnight and every shiftHours after it
+     */
+    public ReceiptSpooler(File dir, Template template, Printer printer, int shiftHours) {
+        this.dir = dir;
+        this.template = template;
+        this.printer = printer;
+        this.shiftHours = Math.max(1, Math.min(24, shiftHours));
+    }
+
+    public Template getTemplate() {
+        return template;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        worker = new Thread(this::spoolLoop, "receipt-spooler");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stop the spooler thread once it has written everything queued before this call. Receipts
+     * submitted after it are written here.
+     */
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            if (!running) return;
+            running = false;
+            t = worker;
+        }
+        queue.add(stopMarker);
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        List<Receipt> left = new ArrayList<>();
+        queue.drainTo(left);
+        left.remove(stopMarker);
+        if (!left.isEmpty()) spool(left);
+    }
+
+    /** Queue a receipt; never blocks. */
+    public void submit(Receipt receipt) {
+        queue.add(receipt);
+    }
+
+    /** Receipts waiting to be written. */
+    public int pending() {
+        return queue.size();
+    }
+
+    /** File of the shift this "yyyy-MM-dd HH:mm:ss" timestamp falls in. */
+    File shiftFile(String timestamp) {
+        LocalDateTime t;
+        try {
+            t = LocalDateTime.parse(timestamp, TS_FMT);
+        } catch (RuntimeException e) {
+            t = LocalDateTime.now();
+        }
+        int shiftStart = t.getHour() / shiftHours * shiftHours;
+        return new File(new File(dir, t.toLocalDate().toString()), String.format("shift-%02d.txt", shiftStart));
+    }
+
+    private void spoolLoop() {
+        List<Receipt> batch = new ArrayList<>(MAX_BATCH);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+            } catch (InterruptedException e) {
+                return; // not used to stop; stop() writes whatever is left
+            }
+            stopping = batch.remove(stopMarker);
+            if (!batch.isEmpty()) spool(batch);
+            batch.clear();
+        }
+    }
+
+    private void spool(List<Receipt> batch) {
+        // A batch normally falls in one shift; group in case it straddles a shift change
+        Map<File, StringBuilder> byFile = new LinkedHashMap<>();
+        List<String> texts = new ArrayList<>(batch.size());
+        for (Receipt r : batch) {
+            String text = template.render(r);
+            texts.add(text);
+            byFile.computeIfAbsent(shiftFile(r.timestamp), f -> new StringBuilder()).append(text).append('\n');
+        }
+        for (Map.Entry<File, StringBuilder> e : byFile.entrySet()) {
+            File f = e.getKey();
+            try {
+                Files.createDirectories(f.getParentFile().toPath());
+                try (Writer w = Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    w.write(e.getValue().toString());
+                }
+            } catch (IOException ex) {
+                System.err.println("Failed to write receipts to " + f + ": " + ex.getMessage());
+            }
+        }
+        if (printer == null) return;
+        for (String text : texts) {
+            try {
+                printer.print(text);
+            } catch (IOException | RuntimeException ex) {
+                System.err.println("Receipt printer failed: " + ex.getMessage());
+            }
+        }
+    }
+}
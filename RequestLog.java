@@ -0,0 +1,197 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Capture log of incoming traffic (request_log.jsonl) for {@link RequestReplay}.
+ *
+ * One JSON object per line, stamped with the epoch millis of the machine clock:
+ *   {"t":...,"kind":"ORDER","drinks":["Еспресо","Лате"],"total":..,"paid":..,"method":..,"cardLast4":..,"txid":..}
+ *   {"t":...,"kind":"ADMIN","event":{...machine event JSON...}}
+ *
+ * Orders are captured when they are submitted to an {@link OrderQueue} (accepted or not); admin
+ * commands are captured from the machine's event stream, so every front-end is covered without
+ * changes to its handlers. Sales are not logged as admin commands, they are the result of orders.
+ */
+public class RequestLog implements CoffeeMachineSimulator.MachineEventListener {
+
+    public static final String DEFAULT_FILE = "request_log.jsonl";
+    static final String KIND_ORDER = "ORDER";
+    static final String KIND_ADMIN = "ADMIN";
+
+    /** One parsed line of the log. */
+    public static class Entry {
+        final long time;
+        final OrderQueue.OrderRequest order;
+        final CoffeeMachineSimulator.MachineEvent adminEvent;
+
+        Entry(long time, OrderQueue.OrderRequest order, CoffeeMachineSimulator.MachineEvent adminEvent) {
+            this.time = time;
+            this.order = order;
+            this.adminEvent = adminEvent;
+        }
+
+        public long getTime() { return time; }
+        /** The order, or null for an admin command. */
+        public OrderQueue.OrderRequest getOrder() { return order; }
+        /** The admin command as the event it produced, or null for an order. */
+        public CoffeeMachineSimulator.MachineEvent getAdminEvent() { return adminEvent; }
+    }
+
+    private final File file;
+    private final Clock clock;
+    private Writer writer;
+
+    public RequestLog(File file, Clock clock) {
+        this.file = file;
+        this.clock = clock;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void recordOrder(OrderQueue.OrderRequest order) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"t\":").append(clock.millis());
+        sb.append(",\"kind\":\"").append(KIND_ORDER).append("\"");
+        sb.append(",\"drinks\":[");
+        for (int i = 0; i < order.getDrinks().size(); i++) {
+            if (i > 0) sb.append(",");
+            appendQuoted(sb, order.getDrinks().get(i));
+        }
+        sb.append("]");
+        sb.append(String.format(Locale.ROOT, ",\"total\":%.2f,\"paid\":%.2f", order.getTotal(), order.getPaid()));
+        sb.append(",\"method\":"); appendQuoted(sb, order.getMethod());
+        sb.append(",\"cardLast4\":"); appendQuoted(sb, order.getCardLast4());
+        sb.append(",\"txid\":"); appendQuoted(sb, order.getTransactionId());
+        sb.append(",\"ts\":"); appendQuoted(sb, order.getTimestamp());
+        sb.append("}");
+        write(sb.toString());
+    }
+
+    @Override
+    public void onEvent(CoffeeMachineSimulator.MachineEvent event) {
+        if (event instanceof CoffeeMachineSimulator.SaleEvent) return;
+        write("{\"t\":" + clock.millis() + ",\"kind\":\"" + KIND_ADMIN + "\",\"event\":" + event.toJson() + "}");
+    }
+
+    /**
+     * Append one line and flush it; the log is a capture aid, so it is not fsynced.
+     */
+    private synchronized void write(String line) {
+        try {
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+            }
+            writer.write(line);
+            writer.write("\n");
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Failed to write request log: " + e.getMessage());
+        }
+    }
+
+    public synchronized void close() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close request log: " + e.getMessage());
+        }
+        writer = null;
+    }
+
+    // ---------------- Reading ----------------
+
+    /**
+     * Read a whole log. Lines that cannot be parsed (e.g. a torn last line) are skipped and counted
+     * in {@code skipped[0]} when an array is given.
+     */
+    public static List<Entry> readAll(File file, int[] skipped) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (line.trim().isEmpty()) continue;
+            Entry entry = parse(line.trim());
+            if (entry != null) entries.add(entry);
+            else if (skipped != null) skipped[0]++;
+        }
+        return entries;
+    }
+
+    static Entry parse(String line) {
+        try {
+            if (!line.startsWith("{\"t\":") || !line.endsWith("}")) return null;
+            int comma = line.indexOf(',');
+            long time = Long.parseLong(line.substring(5, comma));
+            if (line.startsWith("\"kind\":\"" + KIND_ADMIN + "\",\"event\":", comma + 1)) {
+                int start = line.indexOf("\"event\":", comma) + "\"event\":".length();
+                CoffeeMachineSimulator.MachineEvent event =
+                        CoffeeMachineSimulator.MachineEvent.fromJson(line.substring(start, line.length() - 1));
+                return event == null ? null : new Entry(time, null, event);
+            }
+            if (line.startsWith("\"kind\":\"" + KIND_ORDER + "\"", comma + 1)) {
+                int[] pos = { line.indexOf("\"drinks\":[") + "\"drinks\":[".length() };
+                List<String> drinks = new ArrayList<>();
+                while (line.charAt(pos[0]) != ']') {
+                    if (line.charAt(pos[0]) == ',') pos[0]++;
+                    drinks.add(readQuoted(line, pos));
+                }
+                OrderQueue.OrderRequest order = new OrderQueue.OrderRequest(drinks,
+                        readNumber(line, "total"), readNumber(line, "paid"), readField(line, "method"),
+                        readField(line, "cardLast4"), readField(line, "txid"), readField(line, "ts"));
+                return new Entry(time, order, null);
+            }
+            return null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void appendQuoted(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"').append(value.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+    }
+
+    /** Read a quoted string starting at pos[0] and move pos[0] past it. */
+    private static String readQuoted(String line, int[] pos) {
+        if (line.charAt(pos[0]) != '"') throw new IllegalArgumentException("очакван низ");
+        StringBuilder sb = new StringBuilder();
+        int i = pos[0] + 1;
+        while (true) {
+            char c = line.charAt(i++);
+            if (c == '\\') { sb.append(line.charAt(i++)); continue; }
+            if (c == '"') break;
+            sb.append(c);
+        }
+        pos[0] = i;
+        return sb.toString();
+    }
+
+    private static String readField(String line, String key) {
+        String search = "\"" + key + "\":";
+        int start = line.indexOf(search);
+        if (start < 0 || line.startsWith("null", start + search.length())) return null;
+        return readQuoted(line, new int[] { start + search.length() });
+    }
+
+    private static double readNumber(String line, String key) {
+        String search = "\"" + key + "\":";
+        int start = line.indexOf(search) + search.length();
+        int end = start;
+        while (end < line.length() && line.charAt(end) != ',' && line.charAt(end) != '}') end++;
+        return Double.parseDouble(line.substring(start, end));
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds a recorded {@link RequestLog} into a fresh {@link CoffeeMachineSimulator.CoffeeMachine},
+ * either at the original pacing (optionally sped up) or as fast as possible, and reports latency
+ * per operation plus a fingerprint of the final state so two runs can be compared.
+ *
+ * The machine runs in a temp directory (persistent, so journal and snapshot costs are part of the
+ * measurement) starting from factory defaults or from a copy of --state.
+ *
+ * Example:
+ *   java RequestReplay --log request_log.jsonl --asap --queue
+ */
+public class RequestReplay {
+
+    static final String OP_ORDER = "order";
+    static final String OP_ADMIN = "admin";
+
+    static class Config {
+        File log = new File(RequestLog.DEFAULT_FILE);
+        File stateSource; // null = factory defaults
+        boolean asap = false;
+        double speed = 1.0;
+        boolean useQueue = false;
+        int batchSize = 32;
+        boolean inMemory = false;
+
+        static Config parse(String[] args) {
+            Config c = new Config();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (arg) {
+                    case "--log": c.log = new File(value); i++; break;
+                    case "--state": c.stateSource = new File(value); i++; break;
+                    case "--asap": c.asap = true; break;
+                    case "--speed": c.speed = Double.parseDouble(value); i++; break;
+                    case "--queue": c.useQueue = true; break;
+                    case "--batch": c.batchSize = Integer.parseInt(value); i++; break;
+                    case "--in-memory": c.inMemory = true; break;
+                    default:
+                        throw new IllegalArgumentException("Непознат аргумент: " + arg);
+                }
+            }
+            if (c.speed <= 0) throw new IllegalArgumentException("--speed трябва да е положително");
+            return c;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config;
+        try {
+            config = Config.parse(args);
+        } catch (RuntimeException e) {
+            System.out.println("❌ " + e.getMessage());
+            System.out.println("Употреба: java RequestReplay [--log файл] [--state файл] [--asap | --speed N]"
+                    + " [--queue [--batch N]] [--in-memory]");
+            return;
+        }
+        run(config);
+    }
+
+    static void run(Config config) throws Exception {
+        PrintStream report = System.out;
+        int[] skipped = new int[1];
+        List<RequestLog.Entry> entries;
+        try {
+            entries = RequestLog.readAll(config.log, skipped);
+        } catch (IOException e) {
+            report.println("❌ Логът не може да бъде прочетен: " + e.getMessage());
+            return;
+        }
+        if (entries.isEmpty()) {
+            report.println("ℹ️ Логът няма записи: " + config.log.getPath());
+            return;
+        }
+
+        File dataDir = Files.createTempDirectory("coffee-replay").toFile();
+        if (config.stateSource != null) {
+            Files.copy(config.stateSource.toPath(), new File(dataDir, "machine_state.json").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        report.println(String.format("▶ Възпроизвеждане на %d записа (%d пропуснати) от %s, %s%s, данни в %s",
+                entries.size(), skipped[0], config.log.getPath(),
+                config.asap ? "без паузи" : String.format("темпо x%.1f", config.speed),
+                config.useQueue ? ", през опашка (партида до " + config.batchSize + ")" : "",
+                dataDir.getAbsolutePath()));
+
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        CoffeeMachineSimulator.CoffeeMachine machine =
+                new CoffeeMachineSimulator.CoffeeMachine(dataDir, Clock.systemDefaultZone(), !config.inMemory);
+        OrderQueue queue = null;
+        if (config.useQueue) {
+            queue = new OrderQueue(machine, new SalesCsvLog(new File(dataDir, SalesCsvLog.DEFAULT_FILE)), 1024, config.batchSize);
+            queue.start();
+        }
+
+        LoadGenerator.ClientResult result = new LoadGenerator.ClientResult();
+        LoadGenerator.LatencyRecorder orders = result.op(OP_ORDER);
+        LoadGenerator.LatencyRecorder admin = result.op(OP_ADMIN);
+        List<CompletableFuture<OrderQueue.OrderResult>> pending = new ArrayList<>();
+        List<long[]> pendingTimes = new ArrayList<>(); // {submitted, completed}
+
+        long firstTime = entries.get(0).getTime();
+        long t0 = System.nanoTime();
+        try {
+            for (RequestLog.Entry entry : entries) {
+                if (!config.asap) {
+                    long due = t0 + (long) ((entry.getTime() - firstTime) * 1_000_000L / config.speed);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                long t = System.nanoTime();
+                if (entry.getOrder() == null) {
+                    apply(machine, entry.getAdminEvent());
+                    admin.record(System.nanoTime() - t);
+                } else if (queue != null) {
+                    long[] times = { t, 0 };
+                    CompletableFuture<OrderQueue.OrderResult> f = queue.submit(entry.getOrder(), 10, TimeUnit.SECONDS);
+                    pending.add(f.whenComplete((r, e) -> times[1] = System.nanoTime()));
+                    pendingTimes.add(times);
+                } else {
+                    if (!machine.makeOrder(entry.getOrder().getDrinks())) orders.failures++;
+                    orders.record(System.nanoTime() - t);
+                }
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                try {
+                    if (!pending.get(i).get().isAccepted()) orders.failures++;
+                } catch (ExecutionException e) {
+                    orders.failures++;
+                }
+                long[] times = pendingTimes.get(i);
+                orders.record(times[1] - times[0]);
+            }
+        } finally {
+            if (queue != null) queue.stop();
+            machine.close();
+            System.setOut(report);
+        }
+        long elapsed = System.nanoTime() - t0;
+
+        LoadGenerator.printReport(report, result, elapsed);
+        printFingerprint(report, machine);
+    }
+
+    /**
+     * Re-issue an admin command through the machine's public API, so validation and journaling run
+     * exactly as they did when it was recorded.
+     */
+    static void apply(CoffeeMachineSimulator.CoffeeMachine machine, CoffeeMachineSimulator.MachineEvent event) {
+        if (event instanceof CoffeeMachineSimulator.RefillEvent) {
+            CoffeeMachineSimulator.RefillEvent e = (CoffeeMachineSimulator.RefillEvent) event;
+            machine.refillInventory(e.getIngredient(), e.getAmount());
+        } else if (event instanceof CoffeeMachineSimulator.CashCollectedEvent) {
+            machine.collectCash();
+        } else if (event instanceof CoffeeMachineSimulator.RefundEvent) {
+            CoffeeMachineSimulator.RefundEvent e = (CoffeeMachineSimulator.RefundEvent) event;
+            machine.refund(e.getTransactionId(), e.getAmount(), e.getProfit());
+        } else if (event instanceof CoffeeMachineSimulator.DrinkAddedEvent) {
+            CoffeeMachineSimulator.Drink d = ((CoffeeMachineSimulator.DrinkAddedEvent) event).getDrink();
+            machine.addDrink(d.getName(), d.getPrice(), d.getIngredients());
+        } else if (event instanceof CoffeeMachineSimulator.DrinkEditedEvent) {
+            CoffeeMachineSimulator.DrinkEditedEvent e = (CoffeeMachineSimulator.DrinkEditedEvent) event;
+            CoffeeMachineSimulator.Drink d = e.getDrink();
+            machine.editDrink(e.getOriginalName(), d.getName(), d.getPrice(), d.getIngredients());
+        } else if (event instanceof CoffeeMachineSimulator.DrinkDeletedEvent) {
+            machine.deleteDrink(((CoffeeMachineSimulator.DrinkDeletedEvent) event).getDrinkName());
+        } else if (event instanceof CoffeeMachineSimulator.DrinkImageEvent) {
+            CoffeeMachineSimulator.DrinkImageEvent e = (CoffeeMachineSimulator.DrinkImageEvent) event;
+            machine.setDrinkImage(e.getDrinkName(), e.getPath());
+        } else if (event instanceof CoffeeMachineSimulator.IngredientCostEvent) {
+            CoffeeMachineSimulator.IngredientCostEvent e = (CoffeeMachineSimulator.IngredientCostEvent) event;
+            machine.setIngredientCost(e.getIngredient(), e.getUnitCost());
+        }
+    }
+
+    /**
+     * Final state in a stable order; equal fingerprints mean two replays ended in the same state.
+     */
+    private static void printFingerprint(PrintStream out, CoffeeMachineSimulator.CoffeeMachine machine) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("продажби=%d каса=%.2f печалба=%.2f", machine.getSalesCount(),
+                machine.getCashAmount(), machine.getTotalProfitAmount()));
+        for (Map.Entry<String, Integer> e : new TreeMap<>(machine.getInventorySnapshot()).entrySet()) {
+            sb.append(' ').append(e.getKey()).append('=').append(e.getValue());
+        }
+        out.println("Крайно състояние: " + sb);
+        out.println(String.format("Отпечатък: %08x", sb.toString().hashCode()));
+    }
+}
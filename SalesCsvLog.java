@@ -0,0 +1,469 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Transaction-level sales log (sales_log.csv): one row per paid order.
+ *
+ * Columns: timestamp,txid,items,total,paid,change,method,cardLast4,profit
+ * Amounts are always written with a '.' decimal separator so the comma stays a column separator.
+ *
+ * A side index (sales_log.csv.idx, lines "txid offset refundOf") maps each transaction id to the
+ * byte offset of its row, so a receipt's id is found with one seek. The index is appended together
+ * with the rows; on first use it is checked against the CSV and only the unindexed tail is scanned
+ * (the whole file when the index is missing or does not match). Lookups load it into memory; bulk
+ * imports only stream it ({@link #forEachIndexEntry}, {@link #importRows}), so their memory does
+ * not grow with the size of the log.
+ */
+public class SalesCsvLog {
+
+    public static final String DEFAULT_FILE = "sales_log.csv";
+    static final String HEADER = "timestamp,txid,items,total,paid,change,method,cardLast4,profit";
+    static final String INDEX_SUFFIX = ".idx";
+    /** Method of a compensating row; followed by the refunded transaction id. */
+    static final String REFUND_PREFIX = "REFUND:";
+    /** Method of an order paid but not made; followed by the payment method that was given back. */
+    static final String RETURNED_PREFIX = "RETURNED:";
+
+    public static class Row {
+        final String timestamp;
+        final String transactionId;
+        final List<String> items;
+        final double total;
+        final double paid;
+        final double change;
+        final String method;
+        final String cardLast4;
+        final double profit;
+
+        public Row(String timestamp, String transactionId, List<String> items, double total, double paid,
+                   double change, String method, String cardLast4, double profit) {
+            this.timestamp = timestamp;
+            this.transactionId = transactionId;
+            this.items = items;
+            this.total = total;
+            this.paid = paid;
+            this.change = change;
+            this.method = method;
+            this.cardLast4 = cardLast4;
+            this.profit = profit;
+        }
+
+        public String getTimestamp() { return timestamp; }
+        public String getTransactionId() { return transactionId; }
+        public List<String> getItems() { return items; }
+        public double getTotal() { return total; }
+        public double getPaid() { return paid; }
+        public double getChange() { return change; }
+        public String getMethod() { return method; }
+        public String getCardLast4() { return cardLast4; }
+        public double getProfit() { return profit; }
+
+        /** Whether this row is a payment given back because its order was not made (no sale). */
+        public boolean isReturnedPayment() {
+            return method != null && method.startsWith(RETURNED_PREFIX);
+        }
+
+        /** Id of the transaction this row refunds, or null for a sale. */
+        public String getRefundOf() {
+            return method != null && method.startsWith(REFUND_PREFIX) ? method.substring(REFUND_PREFIX.length()) : null;
+        }
+
+        String toCsv() {
+            // Built by hand: String.format dominated bulk imports
+            StringBuilder sb = new StringBuilder(64 + items.size() * 16);
+            sb.append(timestamp).append(',').append(transactionId != null ? transactionId : "-").append(',');
+            sb.append(String.join(";", items).replace(",", " ").replace("\n", " ")).append(',');
+            appendMoney(sb, total).append(',');
+            appendMoney(sb, paid).append(',');
+            appendMoney(sb, change).append(',');
+            sb.append(method != null ? method : "").append(',');
+            sb.append(cardLast4 != null ? cardLast4 : "").append(',');
+            appendMoney(sb, profit).append('\n');
+            return sb.toString();
+        }
+
+        /** Two decimals with a '.' separator, like "%.2f" in Locale.ROOT. */
+        private static StringBuilder appendMoney(StringBuilder sb, double value) {
+            long cents = Math.round(Math.abs(value) * 100);
+            if (value < 0 && cents != 0) sb.append('-');
+            sb.append(cents / 100).append('.');
+            long rest = cents % 100;
+            if (rest < 10) sb.append('0');
+            return sb.append(rest);
+        }
+
+        /**
+         * Parse one CSV line; null for the header or an unreadable line. Also reads rows written
+         * before the separator fix, where every amount was split in two by a decimal comma
+         * (13 columns instead of 9).
+         */
+        static Row parse(String line) {
+            if (line == null || line.isEmpty() || line.startsWith("timestamp,")) return null;
+            String[] f = line.split(",", -1);
+            try {
+                double total, paid, change, profit;
+                String method, card;
+                if (f.length == 9) {
+                    total = Double.parseDouble(f[3]);
+                    paid = Double.parseDouble(f[4]);
+                    change = Double.parseDouble(f[5]);
+                    method = f[6];
+                    card = f[7];
+                    profit = Double.parseDouble(f[8]);
+                } else if (f.length == 13) {
+                    total = Double.parseDouble(f[3] + "." + f[4]);
+                    paid = Double.parseDouble(f[5] + "." + f[6]);
+                    change = Double.parseDouble(f[7] + "." + f[8]);
+                    method = f[9];
+                    card = f[10];
+                    profit = Double.parseDouble(f[11] + "." + f[12]);
+                } else {
+                    return null;
+                }
+                List<String> items = f[2].isEmpty() ? Collections.emptyList() : Arrays.asList(f[2].split(";"));
+                return new Row(f[0], "-".equals(f[1]) ? null : f[1], items, total, paid, change,
+                        method.isEmpty() ? null : method, card.isEmpty() ? null : card, profit);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+
+    /** One line of the index file. */
+    interface IndexEntry {
+        void accept(String transactionId, long offset, String refundOf) throws IOException;
+    }
+
+    private final File file;
+    private final File indexFile;
+    private Map<String, Long> offsets; // txid -> byte offset of its row; loaded on first lookup
+    private Map<String, String> refunds; // refunded txid -> txid of the refund row
+    private long indexedLength = -1; // CSV bytes covered by the index file; -1 until checked
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+
+    public SalesCsvLog(File file) {
+        this.file = file;
+        this.indexFile = new File(file.getPath() + INDEX_SUFFIX);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** Called after rows were appended or the log was cleared, on the writing thread. */
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    public void append(Row row) throws IOException {
+        appendAll(Collections.singletonList(row));
+    }
+
+    /**
+     * Append all rows with one write and one flush (the header is written first for a new file),
+     * then index them.
+     *
+     * @throws IOException when the rows could not be written; none of them is in the log then
+     */
+    public synchronized void appendAll(List<Row> rows) throws IOException {
+        if (rows.isEmpty()) return;
+        long[] at = write(rows);
+        if (offsets != null) {
+            for (int i = 0; i < rows.size(); i++) {
+                Row row = rows.get(i);
+                if (row.transactionId == null) continue;
+                offsets.put(row.transactionId, at[i]);
+                if (row.getRefundOf() != null) refunds.put(row.getRefundOf(), row.transactionId);
+            }
+        }
+        fireChanged();
+    }
+
+    /**
+     * Append for a bulk import: like {@link #appendAll}, but the rows only go to the index file. An
+     * index already loaded into memory is dropped (and read again on the next lookup) instead of
+     * growing with every imported row.
+     *
+     * @return the byte offset of each row in the CSV
+     */
+    synchronized long[] importRows(List<Row> rows) throws IOException {
+        if (rows.isEmpty()) return new long[0];
+        long[] at = write(rows);
+        offsets = null;
+        refunds = null;
+        fireChanged();
+        return at;
+    }
+
+    private long[] write(List<Row> rows) throws IOException {
+        ensureIndexFile();
+        long offset = file.exists() ? file.length() : 0;
+        // Encoded once: the same bytes give the row offsets and go to the file
+        ByteArrayOutputStream out = new ByteArrayOutputStream(rows.size() * 96 + HEADER.length() + 1);
+        if (offset == 0) out.writeBytes((HEADER + "\n").getBytes(StandardCharsets.UTF_8));
+        long rowOffset = offset + out.size();
+        long[] at = new long[rows.size()];
+        StringBuilder idx = new StringBuilder();
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            byte[] csv = row.toCsv().getBytes(StandardCharsets.UTF_8);
+            out.writeBytes(csv);
+            at[i] = rowOffset;
+            if (row.transactionId != null) idx.append(indexLine(row.transactionId, rowOffset, row.getRefundOf()));
+            rowOffset += csv.length;
+        }
+        try (OutputStream stream = new FileOutputStream(file, true)) {
+            out.writeTo(stream);
+        }
+        // The rows are in the log now; a failed index write is only repaired by the next check
+        if (appendIndex(idx.toString())) {
+            indexedLength = rowOffset;
+        } else {
+            indexedLength = -1;
+        }
+        return at;
+    }
+
+    /** Empty the log and its index. */
+    public synchronized void clear() throws IOException {
+        new FileOutputStream(file, false).close();
+        indexFile.delete();
+        offsets = null;
+        refunds = null;
+        indexedLength = -1;
+        fireChanged();
+    }
+
+    private void fireChanged() {
+        for (Runnable listener : changeListeners) listener.run();
+    }
+
+    /**
+     * Row of the given transaction, found through the index; null when unknown.
+     */
+    public synchronized Row lookup(String transactionId) {
+        try {
+            ensureIndex();
+            Long offset = offsets.get(transactionId);
+            if (offset == null) return null;
+            return Row.parse(readLineAt(offset));
+        } catch (IOException e) {
+            System.err.println("Failed to read transaction CSV: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Id of the refund row for this transaction, or null if it was not refunded. */
+    public synchronized String findRefund(String transactionId) {
+        try {
+            ensureIndex();
+        } catch (IOException e) {
+            System.err.println("Failed to read transaction CSV: " + e.getMessage());
+            return null;
+        }
+        return refunds.get(transactionId);
+    }
+
+    /**
+     * Visit every index entry, streaming the index file; nothing is kept in memory. Rows appended
+     * while the visit runs may or may not be seen.
+     */
+    public void forEachIndexEntry(IndexEntry action) throws IOException {
+        long length;
+        synchronized (this) {
+            ensureIndexFile();
+            length = indexFile.exists() ? indexFile.length() : 0;
+        }
+        readIndex(length, action);
+    }
+
+    /** Transaction id of the row at this offset (as given by the index), or null. */
+    static String transactionIdAt(RandomAccessFile csv, long offset) throws IOException {
+        String line = readLineAt(csv, offset);
+        int start = line.indexOf(',');
+        int end = start < 0 ? -1 : line.indexOf(',', start + 1);
+        if (end < 0) return null;
+        String txid = line.substring(start + 1, end);
+        return "-".equals(txid) ? null : txid;
+    }
+
+    // ---------------- Index ----------------
+
+    private static String indexLine(String txid, long offset, String refundOf) {
+        return txid + " " + offset + " " + (refundOf != null ? refundOf : "-") + "\n";
+    }
+
+    /** Load the index file into memory, for lookups. */
+    private void ensureIndex() throws IOException {
+        if (offsets != null) return;
+        ensureIndexFile();
+        Map<String, Long> loadedOffsets = new HashMap<>();
+        Map<String, String> loadedRefunds = new HashMap<>();
+        readIndex(indexFile.exists() ? indexFile.length() : 0, (txid, offset, refundOf) -> {
+            loadedOffsets.put(txid, offset);
+            if (refundOf != null) loadedRefunds.put(refundOf, txid);
+        });
+        offsets = loadedOffsets;
+        refunds = loadedRefunds;
+    }
+
+    /**
+     * Make the index file cover the whole CSV: check that its last entry points at a row with that
+     * id and index only the tail after it (the whole CSV when the index is missing or stale).
+     */
+    private void ensureIndexFile() throws IOException {
+        if (indexedLength >= 0) return;
+        long csvLength = file.exists() ? file.length() : 0;
+        if (csvLength == 0) {
+            indexFile.delete();
+            indexedLength = 0;
+            return;
+        }
+        long covered = checkIndex(csvLength);
+        if (covered == 0) indexFile.delete();
+        indexedLength = covered < csvLength ? scan(covered) : covered;
+    }
+
+    /**
+     * CSV bytes covered by the index file, judged by its last entry; 0 when the index is missing or
+     * does not match the CSV. A torn last line is cut off.
+     */
+    private long checkIndex(long csvLength) {
+        if (!indexFile.exists()) return 0;
+        try (RandomAccessFile idx = new RandomAccessFile(indexFile, "rw")) {
+            long length = idx.length();
+            int tail = (int) Math.min(length, 4096);
+            byte[] buf = new byte[tail];
+            idx.seek(length - tail);
+            idx.readFully(buf);
+            int end = tail;
+            while (end > 0 && buf[end - 1] != '\n') end--;
+            if (end == 0) return 0;
+            if (end < tail) idx.setLength(length - tail + end);
+            int start = end - 1;
+            while (start > 0 && buf[start - 1] != '\n') start--;
+            if (start == 0 && tail < length) return 0;
+            String[] parts = new String(buf, start, end - 1 - start, StandardCharsets.UTF_8).split(" ");
+            if (parts.length != 3) return 0;
+            long lastOffset = Long.parseLong(parts[1]);
+            if (lastOffset >= csvLength) return 0;
+            String line = readLineAt(lastOffset);
+            Row row = Row.parse(line);
+            if (row == null || !parts[0].equals(row.transactionId)) return 0;
+            long covered = lastOffset + line.getBytes(StandardCharsets.UTF_8).length + 1;
+            return covered <= csvLength ? covered : 0;
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** Read the first {@code length} bytes of the index file, one entry at a time. */
+    private void readIndex(long length, IndexEntry action) throws IOException {
+        if (length == 0) return;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(indexFile), 1 << 16)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+            for (long pos = 0; pos < length; pos++) {
+                int b = in.read();
+                if (b == -1) break;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                String[] parts = line.toString(StandardCharsets.UTF_8).split(" ");
+                line.reset();
+                if (parts.length != 3) continue;
+                try {
+                    action.accept(parts[0], Long.parseLong(parts[1]), "-".equals(parts[2]) ? null : parts[2]);
+                } catch (NumberFormatException e) {
+                    // skip the entry; its row is still in the CSV
+                }
+            }
+        }
+    }
+
+    /**
+     * Index the CSV from the given offset to the end, appending to the index file as it goes.
+     * Returns the CSV bytes covered afterwards.
+     */
+    private long scan(long from) throws IOException {
+        long covered = from;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+             Writer idx = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indexFile, true), StandardCharsets.UTF_8))) {
+            in.skipNBytes(from);
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long pos = from;
+            long lineStart = from;
+            int b;
+            while ((b = in.read()) != -1) {
+                pos++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                Row row = Row.parse(line.toString(StandardCharsets.UTF_8).trim());
+                if (row != null && row.transactionId != null) {
+                    idx.write(indexLine(row.transactionId, lineStart, row.getRefundOf()));
+                }
+                line.reset();
+                lineStart = pos;
+            }
+            covered = lineStart; // an unterminated last line is picked up once it is complete
+        }
+        return covered;
+    }
+
+    /** Append lines to the index file; false (logged) when that failed. */
+    private boolean appendIndex(String lines) {
+        if (lines.isEmpty()) return true;
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(indexFile, true), StandardCharsets.UTF_8)) {
+            writer.write(lines);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to write transaction index: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private String readLineAt(long offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return readLineAt(raf, offset);
+        }
+    }
+
+    private static String readLineAt(RandomAccessFile raf, long offset) throws IOException {
+        raf.seek(offset);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        byte[] buf = new byte[512];
+        int n;
+        outer:
+        while ((n = raf.read(buf)) > 0) {
+            for (int i = 0; i < n; i++) {
+                if (buf[i] == '\n') {
+                    line.write(buf, 0, i);
+                    break outer;
+                }
+            }
+            line.write(buf, 0, n);
+        }
+        return line.toString(StandardCharsets.UTF_8).replace("\r", "");
+    }
+}
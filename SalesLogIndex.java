@@ -0,0 +1,287 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Row index over sales_log.csv for browsing: where every row is and the few keys the sales table
+ * sorts and filters by, kept in primitive arrays and per-drink / per-method bitsets.
+ *
+ * Only the part of the file appended since the previous {@link #refresh} is scanned (the whole file
+ * again if it got shorter, e.g. after it was cleared). {@link #query} answers a filter and sort with
+ * an immutable {@link View} of row positions; the rows themselves are read by the caller when shown.
+ * Legacy rows are indexed as {@link SalesCsvLog.Row#parse} reads them; unreadable lines are skipped.
+ */
+public class SalesLogIndex {
+
+    private static final long EPOCH_SECONDS = 1_704_067_200L; // 2024-01-01T00:00:00Z, as for transaction ids
+    /** Method bucket of compensating rows, whatever refunded id they carry. */
+    public static final String REFUND_METHOD = "REFUND";
+
+    public enum SortKey { TIME, TOTAL, PROFIT, METHOD }
+
+    /** Rows to keep; a null field does not filter. Dates are inclusive. */
+    public static class Filter {
+        final LocalDate from;
+        final LocalDate to;
+        final String drink;
+        final String method;
+
+        public Filter(LocalDate from, LocalDate to, String drink, String method) {
+            this.from = from;
+            this.to = to;
+            this.drink = drink;
+            this.method = method;
+        }
+
+        public static Filter all() {
+            return new Filter(null, null, null, null);
+        }
+    }
+
+    /**
+     * Result of a query: file positions of the matching rows in display order, their totals, and
+     * the drinks and methods the whole log had at that time (for filter choices).
+     */
+    public static class View {
+        private final long[] offsets;
+        private final int[] lengths;
+        private final long totalCents;
+        private final long profitCents;
+        private final List<String> drinks;
+        private final List<String> methods;
+
+        View(long[] offsets, int[] lengths, long totalCents, long profitCents, List<String> drinks, List<String> methods) {
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.totalCents = totalCents;
+            this.profitCents = profitCents;
+            this.drinks = drinks;
+            this.methods = methods;
+        }
+
+        static View empty() {
+            return new View(new long[0], new int[0], 0, 0, Collections.emptyList(), Collections.emptyList());
+        }
+
+        public int size() { return offsets.length; }
+        public long getOffset(int i) { return offsets[i]; }
+        public int getLength(int i) { return lengths[i]; }
+        public double getTotal() { return totalCents / 100.0; }
+        public double getProfit() { return profitCents / 100.0; }
+        public List<String> getDrinks() { return drinks; }
+        public List<String> getMethods() { return methods; }
+    }
+
+    private final File file;
+    private int count;
+    private long[] offsets = new long[1024];
+    private int[] lengths = new int[1024];
+    private int[] times = new int[1024]; // seconds since EPOCH_SECONDS, Integer.MIN_VALUE if unreadable
+    private int[] totals = new int[1024]; // cents
+    private int[] profits = new int[1024]; // cents
+    private int[] methodOf = new int[1024];
+    private final List<String> methods = new ArrayList<>();
+    private final Map<String, Integer> methodIds = new HashMap<>();
+    private final List<BitSet> rowsByMethod = new ArrayList<>();
+    private final List<String> drinks = new ArrayList<>();
+    private final Map<String, Integer> drinkIds = new HashMap<>();
+    private final List<BitSet> rowsByDrink = new ArrayList<>();
+    private long scannedLength;
+
+    public SalesLogIndex(File file) {
+        this.file = file;
+    }
+
+    /** Index what was appended since the last call. */
+    public synchronized void refresh() {
+        long length = file.exists() ? file.length() : 0;
+        if (length < scannedLength) reset();
+        if (length == scannedLength) return;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+            in.skipNBytes(scannedLength);
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            long pos = scannedLength;
+            long lineStart = scannedLength;
+            int b;
+            while ((b = in.read()) != -1) {
+                pos++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                SalesCsvLog.Row row = SalesCsvLog.Row.parse(line.toString(StandardCharsets.UTF_8).trim());
+                if (row != null) add(row, lineStart, (int) (pos - 1 - lineStart));
+                line.reset();
+                lineStart = pos;
+            }
+            scannedLength = lineStart; // an unterminated last line is indexed once it is complete
+        } catch (IOException e) {
+            System.err.println("Failed to index sales log: " + e.getMessage());
+        }
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /** Drinks seen in the log, sorted. */
+    public synchronized List<String> getDrinks() {
+        List<String> list = new ArrayList<>(drinks);
+        Collections.sort(list);
+        return list;
+    }
+
+    /** Payment methods seen in the log, sorted; refunds are one {@link #REFUND_METHOD} bucket. */
+    public synchronized List<String> getMethods() {
+        List<String> list = new ArrayList<>(methods);
+        Collections.sort(list);
+        return list;
+    }
+
+    /**
+     * Matching rows in the requested order; ties are in file order (reversed when descending).
+     */
+    public synchronized View query(Filter filter, SortKey sortKey, boolean descending) {
+        BitSet selected = new BitSet(count);
+        selected.set(0, count);
+        if (filter.drink != null) {
+            Integer id = drinkIds.get(filter.drink);
+            if (id == null) return new View(new long[0], new int[0], 0, 0, getDrinks(), getMethods());
+            selected.and(rowsByDrink.get(id));
+        }
+        if (filter.method != null) {
+            Integer id = methodIds.get(filter.method);
+            if (id == null) return new View(new long[0], new int[0], 0, 0, getDrinks(), getMethods());
+            selected.and(rowsByMethod.get(id));
+        }
+        int fromKey = filter.from != null ? timeKey(filter.from.atStartOfDay()) : Integer.MIN_VALUE;
+        int toKey = filter.to != null ? timeKey(filter.to.plusDays(1).atStartOfDay()) : Integer.MAX_VALUE;
+        boolean byDate = filter.from != null || filter.to != null;
+
+        int[] methodRank = methodRanks();
+        long[] keyed = new long[selected.cardinality()];
+        int n = 0;
+        long totalCents = 0;
+        long profitCents = 0;
+        for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+            if (byDate && (times[i] == Integer.MIN_VALUE || times[i] < fromKey || times[i] >= toKey)) continue;
+            int key;
+            switch (sortKey) {
+                case TOTAL: key = totals[i]; break;
+                case PROFIT: key = profits[i]; break;
+                case METHOD: key = methodRank[methodOf[i]]; break;
+                default: key = times[i];
+            }
+            // sort key in the high half, row number in the low half: one primitive sort, stable
+            keyed[n++] = ((long) key << 32) | i;
+            totalCents += totals[i];
+            profitCents += profits[i];
+        }
+        Arrays.sort(keyed, 0, n);
+        long[] viewOffsets = new long[n];
+        int[] viewLengths = new int[n];
+        for (int k = 0; k < n; k++) {
+            int row = (int) keyed[descending ? n - 1 - k : k];
+            viewOffsets[k] = offsets[row];
+            viewLengths[k] = lengths[row];
+        }
+        return new View(viewOffsets, viewLengths, totalCents, profitCents, getDrinks(), getMethods());
+    }
+
+    // ---------------- Internals ----------------
+
+    private void add(SalesCsvLog.Row row, long offset, int length) {
+        if (count == offsets.length) grow();
+        int i = count++;
+        offsets[i] = offset;
+        lengths[i] = length;
+        times[i] = parseTime(row.getTimestamp());
+        totals[i] = (int) Math.round(row.getTotal() * 100);
+        profits[i] = (int) Math.round(row.getProfit() * 100);
+        String method = row.getRefundOf() != null ? REFUND_METHOD : row.getMethod() != null ? row.getMethod() : "-";
+        int methodId = idOf(method, methods, methodIds, rowsByMethod);
+        methodOf[i] = methodId;
+        rowsByMethod.get(methodId).set(i);
+        for (String drink : row.getItems()) {
+            rowsByDrink.get(idOf(drink.trim(), drinks, drinkIds, rowsByDrink)).set(i);
+        }
+    }
+
+    private static int idOf(String name, List<String> names, Map<String, Integer> ids, List<BitSet> rows) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        names.add(name);
+        rows.add(new BitSet());
+        ids.put(name, names.size() - 1);
+        return names.size() - 1;
+    }
+
+    private int[] methodRanks() {
+        List<String> sorted = getMethods();
+        int[] rank = new int[methods.size()];
+        for (int id = 0; id < methods.size(); id++) rank[id] = sorted.indexOf(methods.get(id));
+        return rank;
+    }
+
+    private void grow() {
+        int n = offsets.length * 2;
+        offsets = Arrays.copyOf(offsets, n);
+        lengths = Arrays.copyOf(lengths, n);
+        times = Arrays.copyOf(times, n);
+        totals = Arrays.copyOf(totals, n);
+        profits = Arrays.copyOf(profits, n);
+        methodOf = Arrays.copyOf(methodOf, n);
+    }
+
+    private void reset() {
+        count = 0;
+        scannedLength = 0;
+        methods.clear();
+        methodIds.clear();
+        rowsByMethod.clear();
+        drinks.clear();
+        drinkIds.clear();
+        rowsByDrink.clear();
+    }
+
+    /** "yyyy-MM-dd HH:mm:ss" read digit by digit, cheaper than a formatter parse per row. */
+    private static int parseTime(String ts) {
+        if (ts == null || ts.length() < 19) return Integer.MIN_VALUE;
+        try {
+            LocalDateTime t = LocalDateTime.of(digits(ts, 0, 4), digits(ts, 5, 7), digits(ts, 8, 10),
+                    digits(ts, 11, 13), digits(ts, 14, 16), digits(ts, 17, 19));
+            return timeKey(t);
+        } catch (RuntimeException e) {
+            return Integer.MIN_VALUE;
+        }
+    }
+
+    private static int digits(String s, int from, int to) {
+        int v = 0;
+        for (int i = from; i < to; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) throw new NumberFormatException(s);
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    private static int timeKey(LocalDateTime t) {
+        long seconds = t.toEpochSecond(ZoneOffset.UTC) - EPOCH_SECONDS;
+        return (int) Math.max(Integer.MIN_VALUE + 1, Math.min(Integer.MAX_VALUE, seconds));
+    }
+}
@@ -0,0 +1,303 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Imports sales_log.csv files into a target log, dropping transactions the target already has
+ * (the same export imported twice, logs pulled from a machine more than once).
+ *
+ * Input is streamed once. Every transaction id goes through a Bloom filter holding the target's
+ * ids: a miss means the id is certainly new and the row is appended without further checks; only
+ * on a hit the exact check runs, which tells a real duplicate from a false positive. It is done on
+ * disk: a {@link DiskIdTable} maps id hashes to row offsets in the target CSV, and a matching hash
+ * is confirmed by reading the id at that offset. The heap holds the filter and one batch of rows,
+ * whatever the size of the logs.
+ *
+ * Rows without a transaction id cannot be matched and are imported as they are (and counted).
+ *
+ * Usage: java SalesLogMerger target.csv input1.csv [input2.csv ...]
+ */
+public class SalesLogMerger implements Closeable {
+
+    private static final int BATCH_ROWS = 1000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int BYTES_PER_ROW_ESTIMATE = 80;
+
+    /**
+     * Fixed-size Bloom filter over strings: k probes by double hashing of one 64-bit hash.
+     */
+    static class BloomFilter {
+        private final long[] bits;
+        private final long size;
+        private final int probes;
+
+        BloomFilter(long expectedItems, double falsePositiveRate) {
+            long n = Math.max(1, expectedItems);
+            long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            m = Math.max(64, Math.min(m, 1L << 36));
+            this.bits = new long[(int) ((m + 63) / 64)];
+            this.size = bits.length * 64L;
+            this.probes = Math.max(1, (int) Math.round((double) size / n * Math.log(2)));
+        }
+
+        void add(String key) {
+            long h1 = hash(key);
+            long h2 = mix(h1) | 1;
+            for (int i = 0; i < probes; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, size);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(String key) {
+            long h1 = hash(key);
+            long h2 = mix(h1) | 1;
+            for (int i = 0; i < probes; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, size);
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        /** 64-bit FNV-1a over the UTF-16 chars. */
+        static long hash(String s) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < s.length(); i++) {
+                h ^= s.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            return mix(h);
+        }
+
+        /** MurmurHash3 finalizer. */
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    /**
+     * Transaction ids of the target, as an open-addressing hash table in a memory-mapped temporary
+     * file. A slot holds the id's 64-bit hash and its row's offset in the target CSV plus one (0 is
+     * an empty slot); the id itself is read back from the CSV when the hash matches. The table
+     * doubles when it gets three quarters full.
+     */
+    static class DiskIdTable {
+        private static final int SLOT_BYTES = 16;
+        private static final int MAX_SLOTS = 1 << 26; // one mapping of 1 GB
+
+        private final RandomAccessFile csv;
+        private MappedByteBuffer slots;
+        private int capacity;
+        private long entries;
+
+        DiskIdTable(RandomAccessFile csv, long expectedItems) throws IOException {
+            this.csv = csv;
+            int capacity = 1024;
+            while (capacity < MAX_SLOTS && capacity < expectedItems * 2) capacity <<= 1;
+            this.slots = map(capacity);
+            this.capacity = capacity;
+        }
+
+        void add(String txid, long offset) throws IOException {
+            if (entries >= capacity / 4 * 3) grow();
+            put(BloomFilter.hash(txid), offset + 1);
+            entries++;
+        }
+
+        boolean contains(String txid) throws IOException {
+            long hash = BloomFilter.hash(txid);
+            int mask = capacity - 1;
+            for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+                long stored = slots.getLong(i * SLOT_BYTES + 8);
+                if (stored == 0) return false;
+                if (slots.getLong(i * SLOT_BYTES) == hash && txid.equals(SalesCsvLog.transactionIdAt(csv, stored - 1))) {
+                    return true;
+                }
+            }
+        }
+
+        private void put(long hash, long stored) {
+            int mask = capacity - 1;
+            int i = (int) hash & mask;
+            while (slots.getLong(i * SLOT_BYTES + 8) != 0) i = (i + 1) & mask;
+            slots.putLong(i * SLOT_BYTES, hash);
+            slots.putLong(i * SLOT_BYTES + 8, stored);
+        }
+
+        private void grow() throws IOException {
+            if (capacity >= MAX_SLOTS) throw new IOException("Too many transaction ids for the merge table: " + entries);
+            MappedByteBuffer old = slots;
+            int oldCapacity = capacity;
+            slots = map(capacity * 2);
+            capacity *= 2;
+            for (int i = 0; i < oldCapacity; i++) {
+                long stored = old.getLong(i * SLOT_BYTES + 8);
+                if (stored != 0) put(old.getLong(i * SLOT_BYTES), stored);
+            }
+        }
+
+        /** A zeroed mapping; the file is gone once the mapping is (deleted on close of the channel). */
+        private static MappedByteBuffer map(int capacity) throws IOException {
+            Path path = Files.createTempFile("sales-ids", ".tbl");
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * SLOT_BYTES);
+            }
+        }
+    }
+
+    public static class Result {
+        long read;
+        long imported;
+        long duplicates;
+        long falsePositives;
+        long withoutId;
+        long unreadable;
+
+        public long getRead() { return read; }
+        public long getImported() { return imported; }
+        public long getDuplicates() { return duplicates; }
+        /** Bloom hits that turned out to be new ids after the exact check. */
+        public long getFalsePositives() { return falsePositives; }
+        public long getWithoutId() { return withoutId; }
+        public long getUnreadable() { return unreadable; }
+
+        @Override
+        public String toString() {
+            return String.format("прочетени %d, импортирани %d, дубликати %d (фалшиви попадения на филтъра %d), без ID %d, нечетими %d",
+                    read, imported, duplicates, falsePositives, withoutId, unreadable);
+        }
+    }
+
+    private final SalesCsvLog target;
+    private final RandomAccessFile targetCsv;
+    private final BloomFilter seen;
+    private final DiskIdTable ids;
+
+    /**
+     * @param expectedNewRows rough number of rows that will be imported (sizes the filter)
+     */
+    public SalesLogMerger(SalesCsvLog target, long expectedNewRows) throws IOException {
+        this.target = target;
+        long expected = target.getFile().length() / BYTES_PER_ROW_ESTIMATE + expectedNewRows;
+        this.seen = new BloomFilter(expected, FALSE_POSITIVE_RATE);
+        this.targetCsv = new RandomAccessFile(target.getFile(), "rw"); // created if missing, like the log does
+        try {
+            this.ids = new DiskIdTable(targetCsv, expected);
+            target.forEachIndexEntry((txid, offset, refundOf) -> {
+                seen.add(txid);
+                ids.add(txid, offset);
+            });
+        } catch (IOException e) {
+            targetCsv.close();
+            throw e;
+        }
+    }
+
+    /** Merger sized for the given input files. */
+    public static SalesLogMerger forFiles(SalesCsvLog target, List<File> inputs) throws IOException {
+        long bytes = 0;
+        for (File f : inputs) bytes += f.length();
+        return new SalesLogMerger(target, bytes / BYTES_PER_ROW_ESTIMATE + 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        targetCsv.close();
+    }
+
+    public Result importFile(File input) throws IOException {
+        Result result = new Result();
+        List<SalesCsvLog.Row> batch = new ArrayList<>(BATCH_ROWS);
+        Set<String> batchIds = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(input), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("timestamp,")) continue;
+                result.read++;
+                SalesCsvLog.Row row = SalesCsvLog.Row.parse(line);
+                if (row == null) {
+                    result.unreadable++;
+                    continue;
+                }
+                String txid = row.getTransactionId();
+                if (txid == null) {
+                    result.withoutId++;
+                } else if (seen.mightContain(txid)) {
+                    // Exact check only here: the pending batch, then the target on disk
+                    if (batchIds.contains(txid) || ids.contains(txid)) {
+                        result.duplicates++;
+                        continue;
+                    }
+                    result.falsePositives++;
+                }
+                if (txid != null) {
+                    seen.add(txid);
+                    batchIds.add(txid);
+                }
+                batch.add(row);
+                if (batch.size() >= BATCH_ROWS) {
+                    result.imported += flush(batch, batchIds, result);
+                }
+            }
+        }
+        result.imported += flush(batch, batchIds, result);
+        return result;
+    }
+
+    /** Append the batch; rows are counted as imported only once they are written. */
+    private int flush(List<SalesCsvLog.Row> batch, Set<String> batchIds, Result result) throws IOException {
+        int n = batch.size();
+        long[] at;
+        try {
+            at = target.importRows(batch);
+        } catch (IOException e) {
+            throw new IOException("записът спря след " + result.imported + " импортирани реда: " + e.getMessage(), e);
+        }
+        for (int i = 0; i < n; i++) {
+            String txid = batch.get(i).getTransactionId();
+            if (txid != null) ids.add(txid, at[i]);
+        }
+        batch.clear();
+        batchIds.clear();
+        return n;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Употреба: java SalesLogMerger целеви.csv вход1.csv [вход2.csv ...]");
+            return;
+        }
+        SalesCsvLog target = new SalesCsvLog(new File(args[0]));
+        List<File> inputs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) inputs.add(new File(args[i]));
+        long t0 = System.nanoTime();
+        try (SalesLogMerger merger = forFiles(target, inputs)) {
+            for (File input : inputs) {
+                Result r = merger.importFile(input);
+                System.out.println("✅ " + input.getName() + ": " + r);
+            }
+        }
+        System.out.println(String.format("⏱ %.2f s", (System.nanoTime() - t0) / 1e9));
+    }
+}
@@ -0,0 +1,165 @@
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Table model of the sales log that holds only row positions, not rows.
+ *
+ * Filtering and sorting are done by a {@link SalesLogIndex} on a background thread; the model then
+ * swaps in the resulting {@link SalesLogIndex.View}. Cells are read from the CSV a page at a time
+ * when the table asks for them, and a few recently shown pages are kept, so scrolling through a
+ * log of any size materialises only the visible rows.
+ */
+public class SalesTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    static final String[] COLUMNS = {"Дата", "Транзакция", "Напитки", "Сума", "Платено", "Ресто", "Метод", "Карта", "Печалба"};
+    private static final int PAGE_ROWS = 100;
+    private static final int CACHED_PAGES = 16;
+
+    private final File file;
+    private final SalesLogIndex index;
+    private final ExecutorService worker;
+    private final Map<Integer, SalesCsvLog.Row[]> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, SalesCsvLog.Row[]> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+
+    // EDT only
+    private SalesLogIndex.View view = SalesLogIndex.View.empty();
+    private SalesLogIndex.Filter filter = SalesLogIndex.Filter.all();
+    private SalesLogIndex.SortKey sortKey = SalesLogIndex.SortKey.TIME;
+    private boolean descending = true;
+
+    public SalesTableModel(File file) {
+        this.file = file;
+        this.index = new SalesLogIndex(file);
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "sales-index");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Pick up rows appended to the log and re-run the current query. Call on the EDT. */
+    public void reload() {
+        SalesLogIndex.Filter f = filter;
+        SalesLogIndex.SortKey key = sortKey;
+        boolean desc = descending;
+        worker.execute(() -> {
+            index.refresh();
+            SalesLogIndex.View result = index.query(f, key, desc);
+            SwingUtilities.invokeLater(() -> {
+                // a later reload with other settings is already on its way
+                if (f != filter || key != sortKey || desc != descending) return;
+                view = result;
+                pages.clear();
+                fireTableDataChanged();
+            });
+        });
+    }
+
+    public void setFilter(SalesLogIndex.Filter filter) {
+        this.filter = filter;
+        reload();
+    }
+
+    /** Sort by this key; the same key again flips the direction. */
+    public void sortBy(SalesLogIndex.SortKey key) {
+        if (key == sortKey) {
+            descending = !descending;
+        } else {
+            sortKey = key;
+            descending = key == SalesLogIndex.SortKey.TIME;
+        }
+        reload();
+    }
+
+    public SalesLogIndex.SortKey getSortKey() { return sortKey; }
+    public boolean isDescending() { return descending; }
+    public SalesLogIndex.View getView() { return view; }
+
+    /** Sort key of a column, or null when the column is not sortable. */
+    public static SalesLogIndex.SortKey sortKeyOf(int column) {
+        switch (column) {
+            case 0: return SalesLogIndex.SortKey.TIME;
+            case 3: return SalesLogIndex.SortKey.TOTAL;
+            case 6: return SalesLogIndex.SortKey.METHOD;
+            case 8: return SalesLogIndex.SortKey.PROFIT;
+            default: return null;
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return view.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        SalesCsvLog.Row row = rowAt(rowIndex);
+        if (row == null) return "?";
+        switch (columnIndex) {
+            case 0: return row.getTimestamp();
+            case 1: return row.getTransactionId() != null ? row.getTransactionId() : "-";
+            case 2: return String.join(", ", row.getItems());
+            case 3: return String.format("%.2f", row.getTotal());
+            case 4: return String.format("%.2f", row.getPaid());
+            case 5: return String.format("%.2f", row.getChange());
+            case 6: return row.getMethod() != null ? row.getMethod() : "-";
+            case 7: return row.getCardLast4() != null ? "•••• " + row.getCardLast4() : "";
+            case 8: return String.format("%.2f", row.getProfit());
+            default: return null;
+        }
+    }
+
+    /** Parsed row at this table index, read with its page on first access. */
+    public SalesCsvLog.Row rowAt(int rowIndex) {
+        if (rowIndex < 0 || rowIndex >= view.size()) return null;
+        int page = rowIndex / PAGE_ROWS;
+        SalesCsvLog.Row[] rows = pages.get(page);
+        if (rows == null) {
+            rows = readPage(page);
+            pages.put(page, rows);
+        }
+        return rows[rowIndex - page * PAGE_ROWS];
+    }
+
+    private SalesCsvLog.Row[] readPage(int page) {
+        int from = page * PAGE_ROWS;
+        int to = Math.min(view.size(), from + PAGE_ROWS);
+        SalesCsvLog.Row[] rows = new SalesCsvLog.Row[to - from];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] buf = new byte[256];
+            for (int i = from; i < to; i++) {
+                int length = view.getLength(i);
+                if (buf.length < length) buf = new byte[length];
+                raf.seek(view.getOffset(i));
+                raf.readFully(buf, 0, length);
+                rows[i - from] = SalesCsvLog.Row.parse(new String(buf, 0, length, StandardCharsets.UTF_8).trim());
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read sales log: " + e.getMessage());
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,193 @@
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * On-disk store of pre-scaled images, so the UI reads small thumbnails instead of decoding
+ * full-size photos on every launch.
+ *
+ * A thumbnail is named after the SHA-256 of the source file's content plus the fit mode and size
+ * ({@code thumbnails/<hash>_contain_260x200.jpg}, .png when the image has transparency): a renamed
+ * or copied photo reuses it, an edited one gets a new one. Hashing a photo is far cheaper than
+ * decoding it, and the hash is remembered per path, mtime and length for the rest of the session.
+ * Files are written to a temp name and moved into place, so readers never see a half-written
+ * thumbnail.
+ *
+ * As a machine event listener the store pre-generates the drink sizes as soon as an image is
+ * attached to a drink.
+ */
+public class ThumbnailStore implements CoffeeMachineSimulator.MachineEventListener {
+
+    public static final String DEFAULT_DIR = "thumbnails";
+    private static final float JPEG_QUALITY = 0.9f;
+
+    public enum Fit {
+        /** Whole image inside the box (drink pictures). */
+        CONTAIN,
+        /** Box fully covered, overflow kept for cropping (backgrounds); never enlarged. */
+        COVER
+    }
+
+    private final File dir;
+    private final List<Dimension> drinkSizes;
+    private final Executor executor;
+    private final Map<String, String> hashes = new ConcurrentHashMap<>(); // path|mtime|length -> content hash
+
+    /**
+     * @param drinkSizes sizes drink images are shown at; generated when an image is attached
+     * @param executor   runs that generation, off the thread that records the event
+     */
+    public ThumbnailStore(File dir, List<Dimension> drinkSizes, Executor executor) {
+        this.dir = dir;
+        this.drinkSizes = new ArrayList<>(drinkSizes);
+        this.executor = executor;
+    }
+
+    /**
+     * The source image scaled for this box, from the store when present, otherwise decoded, scaled
+     * and stored. Null when the source is not a readable image.
+     */
+    public BufferedImage load(File source, int width, int height, Fit fit) throws IOException {
+        String name = thumbnailName(source, width, height, fit);
+        for (String ext : new String[]{".jpg", ".png"}) {
+            File thumb = new File(dir, name + ext);
+            if (!thumb.isFile()) continue;
+            BufferedImage img = ImageIO.read(thumb);
+            if (img != null) return img;
+            thumb.delete(); // unreadable: regenerate below
+        }
+        BufferedImage full = ImageIO.read(source);
+        if (full == null) return null;
+        if (fit == Fit.COVER && (full.getWidth() <= width || full.getHeight() <= height)) {
+            return full; // already no larger than needed: a copy would not be any cheaper to read
+        }
+        BufferedImage scaled = scale(full, width, height, fit);
+        try {
+            write(scaled, name);
+        } catch (IOException e) {
+            System.err.println("Thumbnail write failed: " + e.getMessage());
+        }
+        return scaled;
+    }
+
+    @Override
+    public void onEvent(CoffeeMachineSimulator.MachineEvent event) {
+        if (!(event instanceof CoffeeMachineSimulator.DrinkImageEvent)) return;
+        String path = ((CoffeeMachineSimulator.DrinkImageEvent) event).getPath();
+        if (path == null || path.isEmpty() || path.toLowerCase(Locale.ROOT).endsWith(".gif")) return;
+        executor.execute(() -> {
+            File source = new File(path);
+            for (Dimension size : drinkSizes) {
+                try {
+                    if (load(source, size.width, size.height, Fit.CONTAIN) == null) return;
+                } catch (IOException e) {
+                    System.err.println("Thumbnail for " + path + " failed: " + e.getMessage());
+                    return;
+                }
+            }
+        });
+    }
+
+    /**
+     * Pixel size of an image read from its header only, or null if no installed reader accepts the
+     * file. Enough to validate a chosen file without decoding it.
+     */
+    public static Dimension probe(File file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // ---------------- Internals ----------------
+
+    String thumbnailName(File source, int width, int height, Fit fit) throws IOException {
+        return contentHash(source) + "_" + fit.name().toLowerCase(Locale.ROOT) + "_" + width + "x" + height;
+    }
+
+    private String contentHash(File source) throws IOException {
+        String key = source.getAbsolutePath() + "|" + source.lastModified() + "|" + source.length();
+        String cached = hashes.get(key);
+        if (cached != null) return cached;
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new FileInputStream(source)) {
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) > 0) digest.update(buf, 0, n);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) hex.append(String.format("%02x", b));
+        String hash = hex.toString();
+        hashes.put(key, hash);
+        return hash;
+    }
+
+    private static BufferedImage scale(BufferedImage img, int width, int height, Fit fit) {
+        double sx = (double) width / img.getWidth();
+        double sy = (double) height / img.getHeight();
+        double scale = fit == Fit.CONTAIN ? Math.min(sx, sy) : Math.min(1.0, Math.max(sx, sy));
+        // COVER rounds up so the result still covers the whole box
+        int w = Math.max(1, (int) (fit == Fit.COVER ? Math.ceil(img.getWidth() * scale) : img.getWidth() * scale));
+        int h = Math.max(1, (int) (fit == Fit.COVER ? Math.ceil(img.getHeight() * scale) : img.getHeight() * scale));
+        return DrinkImageCache.scale(img, w, h);
+    }
+
+    /** Opaque thumbnails are stored as JPEG, ones with transparency as PNG. */
+    private void write(BufferedImage img, String name) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("cannot create " + dir);
+        boolean opaque = img.getTransparency() == BufferedImage.OPAQUE;
+        File target = new File(dir, name + (opaque ? ".jpg" : ".png"));
+        File tmp = File.createTempFile("thumb", ".tmp", dir);
+        try {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName(opaque ? "jpg" : "png").next();
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(tmp)) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                if (opaque) {
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(JPEG_QUALITY);
+                }
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(img, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-ordered, collision-free transaction ids: {@code <machine>-<12 chars>}, e.g. {@code K1-054HXA1DP000}.
+ *
+ * The 12 characters are Crockford base32 of (millis since 2024-01-01 << 16 | sequence), fixed width,
+ * so within one machine ids sort lexicographically in issue order. The state is one AtomicLong
+ * updated with a CAS loop: a new id takes the current millisecond with sequence 0, or the previous
+ * value + 1 when that is not larger (same millisecond, or the clock went back). More than 65536 ids
+ * in one millisecond simply borrow from the next one, so the generator never blocks or repeats.
+ *
+ * Ids from several machines are merged in time order with {@link #TIME_ORDER}.
+ */
+public class TransactionIdGenerator {
+
+    private static final long EPOCH_MILLIS = 1_704_067_200_000L; // 2024-01-01T00:00:00Z
+    private static final int SEQUENCE_BITS = 16;
+    private static final int BODY_CHARS = 12; // 60 bits, enough for the year 2093
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    /** Orders ids by their time part, then by machine prefix. */
+    public static final Comparator<String> TIME_ORDER = Comparator
+            .comparing((String id) -> id.substring(id.lastIndexOf('-') + 1))
+            .thenComparing(id -> id.substring(0, Math.max(0, id.lastIndexOf('-'))));
+
+    private static final TransactionIdGenerator DEFAULT = new TransactionIdGenerator(
+            System.getProperty("coffee.machine.id", "K1"));
+
+    private final char[] prefix;
+    private final AtomicLong last = new AtomicLong();
+
+    /**
+     * @param machineId short node name; reduced to upper-case letters and digits, at most 8 characters
+     */
+    public TransactionIdGenerator(String machineId) {
+        String clean = machineId == null ? "" : machineId.toUpperCase().replaceAll("[^A-Z0-9]", "");
+        if (clean.isEmpty()) clean = "K1";
+        if (clean.length() > 8) clean = clean.substring(0, 8);
+        this.prefix = (clean + "-").toCharArray();
+    }
+
+    /** Generator shared by all front-ends of this JVM; machine id from -Dcoffee.machine.id (default K1). */
+    public static TransactionIdGenerator getDefault() {
+        return DEFAULT;
+    }
+
+    public String next() {
+        long candidate = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        long value;
+        while (true) {
+            long previous = last.get();
+            value = candidate > previous ? candidate : previous + 1;
+            if (last.compareAndSet(previous, value)) break;
+        }
+        char[] id = new char[prefix.length + BODY_CHARS];
+        System.arraycopy(prefix, 0, id, 0, prefix.length);
+        for (int i = id.length - 1; i >= prefix.length; i--) {
+            id[i] = ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+        return new String(id);
+    }
+
+    /**
+     * Issue time of an id from any machine, in epoch millis (-1 if it is not one of ours).
+     */
+    public static long timestampOf(String id) {
+        if (id == null) return -1;
+        int dash = id.lastIndexOf('-');
+        if (id.length() - dash - 1 != BODY_CHARS) return -1;
+        long value = 0;
+        for (int i = dash + 1; i < id.length(); i++) {
+            int digit = indexOf(id.charAt(i));
+            if (digit < 0) return -1;
+            value = (value << 5) | digit;
+        }
+        return (value >>> SEQUENCE_BITS) + EPOCH_MILLIS;
+    }
+
+    private static int indexOf(char c) {
+        for (int i = 0; i < ALPHABET.length; i++) {
+            if (ALPHABET[i] == c) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Support operations on paid transactions by the id printed on the receipt: lookup and refund.
+ *
+ * Both go through the {@link SalesCsvLog} index, so neither scans the log. A refund is
+ * compensating, nothing is rewritten: the machine records a REFUND event (cash and profit go back)
+ * and the CSV gets a row with negative amounts whose method is "REFUND:&lt;original id&gt;". The
+ * journaled REFUND events decide whether a transaction was refunded, so a refund whose CSV row
+ * could not be written is still never paid out twice.
+ *
+ * There is no separate void: a transaction only reaches the log once its drinks are made, so
+ * undoing it is a refund. An order rejected before that never becomes a sale; its card
+ * authorization is reversed instead.
+ */
+public class TransactionLedger {
+
+    private static final DateTimeFormatter TS_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final CoffeeMachineSimulator.CoffeeMachine machine;
+    private final SalesCsvLog salesLog;
+    private final TransactionIdGenerator ids;
+
+    public TransactionLedger(CoffeeMachineSimulator.CoffeeMachine machine, SalesCsvLog salesLog, TransactionIdGenerator ids) {
+        this.machine = machine;
+        this.salesLog = salesLog;
+        this.ids = ids;
+    }
+
+    public SalesCsvLog.Row lookup(String transactionId) {
+        return salesLog.lookup(transactionId.trim());
+    }
+
+    /** Id of the refund row of this transaction, or null if the log has none. */
+    public String findRefund(String transactionId) {
+        return salesLog.findRefund(transactionId.trim());
+    }
+
+    /** Whether the machine recorded a refund of this transaction, with or without its CSV row. */
+    public boolean isRefunded(String transactionId) {
+        return machine.isRefunded(transactionId.trim());
+    }
+
+    /**
+     * Refund a whole transaction.
+     *
+     * @return the compensating row written to the sales log
+     * @throws IllegalArgumentException when the id is unknown
+     * @throws IllegalStateException    when it is already refunded, is itself a refund, or the till is
+     *                                  short; also when the money was returned but its CSV row could not be written
+     */
+    public synchronized SalesCsvLog.Row refund(String transactionId) {
+        String txid = transactionId.trim();
+        SalesCsvLog.Row original = salesLog.lookup(txid);
+        if (original == null) {
+            throw new IllegalArgumentException("Няма транзакция с ID " + txid + ".");
+        }
+        if (original.getRefundOf() != null) {
+            throw new IllegalStateException("Транзакция " + txid + " е възстановяване и не може да бъде възстановена.");
+        }
+        if (original.isReturnedPayment()) {
+            throw new IllegalStateException("Плащането по транзакция " + txid + " е върнато още при отказа на поръчката.");
+        }
+        String existing = salesLog.findRefund(txid);
+        if (existing != null) {
+            throw new IllegalStateException("Транзакция " + txid + " вече е възстановена (" + existing + ").");
+        }
+        if (machine.isRefunded(txid)) {
+            throw new IllegalStateException("Транзакция " + txid + " вече е възстановена.");
+        }
+        if (!machine.refund(txid, original.getTotal(), original.getProfit())) {
+            throw new IllegalStateException(String.format("В касата няма %.2f лв. за възстановяване.", original.getTotal()));
+        }
+        SalesCsvLog.Row refund = new SalesCsvLog.Row(
+                LocalDateTime.now(machine.getClock()).format(TS_FMT), ids.next(), original.getItems(), -original.getTotal(), -original.getTotal(), 0.0,
+                SalesCsvLog.REFUND_PREFIX + txid, original.getCardLast4(), -original.getProfit());
+        try {
+            salesLog.append(refund);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format(
+                    "Сумата от %.2f лв. е възстановена, но редът %s не е записан в %s: %s",
+                    original.getTotal(), refund.getTransactionId(), salesLog.getFile().getName(), e.getMessage()), e);
+        }
+        return refund;
+    }
+
+    /**
+     * Record that the payment of an order which was not made went back to the customer (cash given
+     * back, card authorization reversed). The row has the order's id so support finds it like any
+     * receipt, but it is no sale: total and profit are 0, everything paid is change, and the method
+     * is "RETURNED:&lt;method&gt;". The till is not touched; the money never went into it.
+     */
+    public SalesCsvLog.Row recordReturnedPayment(String transactionId, List<String> items, double paid,
+                                                 String method, String cardLast4) throws IOException {
+        SalesCsvLog.Row row = new SalesCsvLog.Row(
+                LocalDateTime.now(machine.getClock()).format(TS_FMT), transactionId, items, 0.0, paid, paid,
+                SalesCsvLog.RETURNED_PREFIX + (method != null ? method : "-"), cardLast4, 0.0);
+        salesLog.append(row);
+        return row;
+    }
+}
@@ -0,0 +1,118 @@
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Turns machine events (and sales log appends) into coarse change notifications for Swing panels.
+ *
+ * Events arrive on whatever thread changed the machine. They are folded into one pending
+ * {@link ChangeSet} and a single EDT task is posted for it, so a batch of orders or several admin
+ * edits in a row reach each subscriber once, with everything that changed in between. Subscribers
+ * are only called for the kinds of change they asked for.
+ */
+public class UiChangeNotifier implements CoffeeMachineSimulator.MachineEventListener {
+
+    public enum Change {
+        /** Drinks added, edited or deleted. */
+        MENU,
+        /** Stock or unit cost of the ingredients in {@link ChangeSet#getIngredients()}. */
+        INVENTORY,
+        /** Cash in the machine or total profit. */
+        CASH,
+        /** Rows appended to the sales log. */
+        SALES,
+        /** Image of the drinks in {@link ChangeSet#getDrinks()}. */
+        IMAGE
+    }
+
+    /** What changed since the previous notification. */
+    public static class ChangeSet {
+        private final EnumSet<Change> kinds = EnumSet.noneOf(Change.class);
+        private final Set<String> ingredients = new HashSet<>();
+        private final Set<String> drinks = new HashSet<>();
+
+        public boolean contains(Change kind) { return kinds.contains(kind); }
+        public Set<String> getIngredients() { return Collections.unmodifiableSet(ingredients); }
+        public Set<String> getDrinks() { return Collections.unmodifiableSet(drinks); }
+    }
+
+    public interface Subscriber {
+        void onChanges(ChangeSet changes);
+    }
+
+    private static class Subscription {
+        final EnumSet<Change> interest;
+        final Subscriber subscriber;
+
+        Subscription(EnumSet<Change> interest, Subscriber subscriber) {
+            this.interest = interest;
+            this.subscriber = subscriber;
+        }
+    }
+
+    private final List<Subscription> subscriptions = new ArrayList<>(); // EDT only
+    private ChangeSet pending; // guarded by this; non-null while a dispatch is posted
+
+    /** Register on the EDT; the subscriber is called on the EDT. */
+    public void subscribe(EnumSet<Change> interest, Subscriber subscriber) {
+        subscriptions.add(new Subscription(EnumSet.copyOf(interest), subscriber));
+    }
+
+    @Override
+    public void onEvent(CoffeeMachineSimulator.MachineEvent event) {
+        if (event instanceof CoffeeMachineSimulator.SaleEvent) {
+            CoffeeMachineSimulator.SaleEvent sale = (CoffeeMachineSimulator.SaleEvent) event;
+            post(Change.INVENTORY, sale.getIngredients().keySet(), null);
+            post(Change.CASH, null, null);
+        } else if (event instanceof CoffeeMachineSimulator.RefillEvent) {
+            post(Change.INVENTORY, Collections.singleton(((CoffeeMachineSimulator.RefillEvent) event).getIngredient()), null);
+        } else if (event instanceof CoffeeMachineSimulator.IngredientCostEvent) {
+            post(Change.INVENTORY, Collections.singleton(((CoffeeMachineSimulator.IngredientCostEvent) event).getIngredient()), null);
+        } else if (event instanceof CoffeeMachineSimulator.CashCollectedEvent || event instanceof CoffeeMachineSimulator.RefundEvent) {
+            post(Change.CASH, null, null);
+        } else if (event instanceof CoffeeMachineSimulator.DrinkImageEvent) {
+            post(Change.IMAGE, null, Collections.singleton(((CoffeeMachineSimulator.DrinkImageEvent) event).getDrinkName()));
+        } else if (event instanceof CoffeeMachineSimulator.DrinkAddedEvent
+                || event instanceof CoffeeMachineSimulator.DrinkEditedEvent
+                || event instanceof CoffeeMachineSimulator.DrinkDeletedEvent) {
+            post(Change.MENU, null, null);
+        }
+    }
+
+    /** For the sales log: rows were appended. */
+    public void salesAppended() {
+        post(Change.SALES, null, null);
+    }
+
+    private void post(Change kind, Set<String> ingredients, Set<String> drinks) {
+        synchronized (this) {
+            boolean schedule = pending == null;
+            if (schedule) pending = new ChangeSet();
+            pending.kinds.add(kind);
+            if (ingredients != null) pending.ingredients.addAll(ingredients);
+            if (drinks != null) pending.drinks.addAll(drinks);
+            if (!schedule) return;
+        }
+        SwingUtilities.invokeLater(this::dispatch);
+    }
+
+    private void dispatch() {
+        ChangeSet changes;
+        synchronized (this) {
+            changes = pending;
+            pending = null;
+        }
+        for (Subscription s : subscriptions) {
+            for (Change kind : s.interest) {
+                if (changes.contains(kind)) {
+                    s.subscriber.onChanges(changes);
+                    break;
+                }
+            }
+        }
+    }
+}